@@ -1,51 +1,69 @@
-function set(path, data) {
-    Data.set(path, data);
-    return "";
+/*
+ * Gets and sets custom data through the placeholder arguments. Each action is a placeholder
+ * of its own when the script is configured with its functions:
+ *
+ * 'data_example':
+ *   file: 'data_example.js'
+ *   functions:
+ *   - get
+ *   - getint
+ *   - set
+ *   - add
+ *   - subtract
+ *
+ * %javascript_data_example_get_<path>%
+ * %javascript_data_example_getint_<path>%
+ * %javascript_data_example_set_<path>,<value>%
+ * %javascript_data_example_add_<path>,<amount>%
+ * %javascript_data_example_subtract_<path>,<amount>%
+ *
+ * Configured with the file only, the action is the first argument instead,
+ * e.g. %javascript_data_example_get,<path>%.
+ */
+
+function get(args) {
+    if (args.length !== 1) {
+        return getUsage("get");
+    }
+    return Data.exists(args[0]) ? Data.get(args[0]) : "";
 }
 
-function add(path, amount) {
-    if (isNaN(amount)) {
-        return "";
+function getint(args) {
+    if (args.length !== 1) {
+        return getUsage("getint");
     }
+    return Data.getLong(args[0]);
+}
 
-    var current = Data.exists(path) ? Data.get(path) : 0;
-
-    if (isNaN(current)) {
-        current = 0;
+function set(args) {
+    if (args.length !== 2) {
+        return getUsage("set");
     }
 
-    current = parseInt(current) + parseInt(amount);
-    Data.set(path, current.toFixed());
+    Data.set(args[0], args[1]);
     return "";
 }
 
-function subtract(path, amount) {
-    if (isNaN(amount)) {
-        return "";
-    }
-
-    var amt = Data.exists(path) ? parseInt(Data.get(path)) : 0;
-
-    if (isNaN(amt)) {
-        amt = 0;
-    }
-
-    amt = parseInt(amt) - parseInt(amount);
-    Data.set(path, amt.toFixed());
-    return "";
+function add(args) {
+    return increment(args, 1, "add");
 }
 
-function get(path)  {
-    return Data.exists(path)  ? Data.get(path) : "";
+function subtract(args) {
+    return increment(args, -1, "subtract");
 }
 
-function getInt(path) {
-    if (Data.get(path) != null) {
-        var value = Data.get(path);
-        return isNaN(value) ? 0 : parseInt(value).toFixed();
+function increment(args, sign, action) {
+    if (args.length !== 2) {
+        return getUsage(action);
     }
 
-    return 0;
+    var n = parseInt(args[1]);
+    if (isNaN(n)) {
+        return "";
+    }
+
+    Data.incr(args[0], sign * n);
+    return "";
 }
 
 function getUsage(action) {
@@ -65,46 +83,27 @@ function getUsage(action) {
     }
 }
 
+// Configured with the file only: the first argument is the action, the others are its arguments
 function runPlaceholder() {
+    var actions = {get: get, getint: getint, set: set, add: add, subtract: subtract};
+
     if (args.length === 0) {
         return getUsage("No arguments");
     }
 
-    var action = args[0].toLowerCase();
+    var action = String(args[0]).toLowerCase();
 
-    if (args.length === 1) {
+    if (!actions.hasOwnProperty(action)) {
         return getUsage(action);
     }
 
-    var path = args[1];
-
-    if (args.length === 2) {
-        if (action.equals("get")) {
-            return get(path);
-        }
-
-        if (action.equals("getint")) {
-            return getInt(path);
-        }
+    var rest = [];
+    for (var i = 1; i < args.length; i++) {
+        rest.push(args[i]);
     }
-
-    var value = args[2];
-
-    if (args.length === 3) {
-        if (action.equals("set")) {
-            return set(path, value);
-        }
-
-        if (action.equals("add")) {
-            return add(path, value);
-        }
-
-        if (action.equals("subtract")) {
-            return subtract(path, value);
-        }
-    }
-
-    return getUsage(action);
+    return actions[action](rest);
 }
 
-runPlaceholder();
\ No newline at end of file
+if (!Placeholder.hasFunctions()) {
+    runPlaceholder();
+}
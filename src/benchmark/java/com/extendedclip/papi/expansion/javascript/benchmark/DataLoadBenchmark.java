@@ -0,0 +1,104 @@
+package com.extendedclip.papi.expansion.javascript.benchmark;
+
+import com.extendedclip.papi.expansion.javascript.ScriptData;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.MemorySection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a generated data file with nested sections into script data. 'leaves' is the current
+ * single pass over getValues(true), 'sections' is how data was read before: every key of
+ * getKeys(true), sections converted into flattened maps of their whole subtree.
+ * <p>
+ * The file has 'breadth' children per section down to 'depth' levels, the leaves hold numbers.
+ * The parsing of the file itself is the same for both and left out. Allocations are reported by
+ * the gc profiler the benchmark profile runs with:
+ * <pre>
+ * mvn -P legacy,benchmark test-compile exec:exec -Dbenchmark.include=DataLoadBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataLoadBenchmark {
+
+    @Param({"3", "5"})
+    public int depth;
+
+    @Param({"6"})
+    public int breadth;
+
+    @Param({"leaves", "sections"})
+    public String reader;
+
+    private YamlConfiguration yaml;
+
+    @Setup
+    public void setup() throws InvalidConfigurationException {
+        final StringBuilder builder = new StringBuilder();
+        generate(builder, 0, "");
+
+        yaml = new YamlConfiguration();
+        yaml.loadFromString(builder.toString());
+    }
+
+    private void generate(StringBuilder builder, int level, String indent) {
+        for (int i = 0; i < breadth; i++) {
+            builder.append(indent).append("key").append(i).append(':');
+
+            if (level + 1 == depth) {
+                builder.append(' ').append(level * breadth + i).append('\n');
+                continue;
+            }
+
+            builder.append('\n');
+            generate(builder, level + 1, indent + "  ");
+        }
+    }
+
+    @Benchmark
+    public Object load() {
+        if ("leaves".equals(reader)) {
+            final ScriptData data = new ScriptData();
+            data.readFrom(yaml);
+            return data;
+        }
+
+        final Map<String, Object> data = new HashMap<>();
+        yaml.getKeys(true).forEach(key -> data.put(key, toJava(yaml.get(key))));
+        return data;
+    }
+
+    // The conversion data went through before, kept here for comparison
+    private static Object toJava(Object value) {
+        if (!(value instanceof MemorySection)) {
+            return value;
+        }
+
+        final MemorySection section = (MemorySection) value;
+
+        if (section.isList(section.getCurrentPath())) {
+            final List<Object> list = new ArrayList<>();
+            for (String entry : section.getKeys(true)) {
+                list.add(toJava(section.get(entry)));
+            }
+            return list;
+        }
+
+        final Map<String, Object> map = new HashMap<>();
+        for (String entry : section.getKeys(true)) {
+            map.put(entry, toJava(section.get(entry)));
+        }
+        return map;
+    }
+}
@@ -0,0 +1,58 @@
+package com.extendedclip.papi.expansion.javascript.benchmark;
+
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.Language;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start of the expansion's engine: the shared engine is built and its languages are listed,
+ * like register() does in debug mode. Each fork is a fresh JVM, so each measurement includes
+ * class loading.
+ * <p>
+ * Before the JSR-223 path was dropped, a ScriptEngineManager was created first. That was
+ * measured separately, since js-scriptengine is no longer a dependency: 10 fresh JVMs per setup
+ * with the 20.3 jars, and 'debug' also reads every factory like the old report did.
+ * <pre>
+ *                                  time (ms)  loaded classes  metaspace (KB)
+ * JDK 8   ScriptEngineManager+debug     377            1189            7310
+ *         ScriptEngineManager           384            1175            7252
+ *         engine only                   327            1164            7200
+ * JDK 17  ScriptEngineManager+debug     486            1551            4336
+ *         ScriptEngineManager           465            1551            4330
+ *         engine only                   450            1535            4241
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class EngineStartupBenchmark {
+
+    private Engine engine;
+
+    @Benchmark
+    public Engine createEngine() {
+        try {
+            engine = Engine.newBuilder().option("engine.WarnInterpreterOnly", "false").build();
+        } catch (IllegalArgumentException ex) {
+            // 20.3 does not know the option
+            engine = Engine.create();
+        }
+
+        for (Language language : engine.getLanguages().values()) {
+            language.getName();
+            language.getVersion();
+            language.getMimeTypes();
+        }
+        return engine;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        engine.close();
+    }
+}
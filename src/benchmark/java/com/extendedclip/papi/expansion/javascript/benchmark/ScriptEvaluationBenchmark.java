@@ -0,0 +1,109 @@
+package com.extendedclip.papi.expansion.javascript.benchmark;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.HostAccess;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates the bundled scripts which do not need a running server, the way the expansion does
+ * on each request. 'scriptText' is how scripts were evaluated before the shared engine, from
+ * their text on every request. 'cachedSource' is the current setup, a Source built once.
+ * <p>
+ * The interpreter and the optimizing runtime are compared by running the same benchmark with
+ * each build profile:
+ * <pre>
+ * mvn -P legacy,benchmark test-compile exec:exec
+ * mvn -P modern,benchmark test-compile exec:exec
+ * </pre>
+ * Average time in us/op on JDK 17.0.9, one CPU core, 5x2s warmup and 5x2s measurement. The modern
+ * stack only compiles with JVMCI enabled and the Graal compiler on the upgrade module path, on a
+ * stock JDK it runs interpreter-only like 20.3:
+ * <pre>
+ *                                      20.3 interpreter  23.1 interpreter  23.1 compiled
+ * random_letter.js          scriptText     1.68 +- 0.67      1.48 +- 0.58    0.54 +- 0.37
+ *                           cachedSource   1.34 +- 1.50      1.20 +- 1.16    0.30 +- 0.15
+ * random_integer_between.js scriptText     2.01 +- 1.46      1.66 +- 1.39    0.63 +- 0.66
+ *                           cachedSource   1.06 +- 0.10      1.14 +- 0.45    0.30 +- 0.11
+ * difference_dates.js:time  scriptText     7.13 +- 4.32      5.60 +- 5.17    2.41 +- 6.46
+ *                           cachedSource   4.87 +- 0.81      4.07 +- 1.01    5.51 +- 18.28
+ * </pre>
+ * The compiled difference_dates.js run did not settle within the measurement, its error is
+ * larger than its score.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScriptEvaluationBenchmark {
+
+    // Script file, and the function to call for scripts which only declare functions
+    @Param({"random_letter.js", "random_integer_between.js", "difference_dates.js:time"})
+    public String script;
+
+    @Param({"scriptText", "cachedSource"})
+    public String setup;
+
+    private Engine engine;
+    private Context context;
+    private String text;
+    private Source source;
+    private String function;
+
+    @Setup
+    public void setup() throws IOException {
+        final String[] parts = script.split(":");
+        final String directory = System.getProperty("benchmark.scripts", "scripts");
+
+        text = new String(Files.readAllBytes(Paths.get(directory, parts[0])), StandardCharsets.UTF_8);
+        function = parts.length > 1 ? parts[1] : null;
+        source = Source.newBuilder("js", text, parts[0]).buildLiteral();
+
+        // A single placeholder is measured, so both setups own their engine. They differ in what
+        // is evaluated, the script text or a Source the engine can keep the parsed code of
+        engine = createEngine();
+        context = Context.newBuilder("js")
+                .engine(engine)
+                .allowAllAccess(true)
+                .allowExperimentalOptions(true)
+                .allowHostAccess(HostAccess.ALL)
+                .option("js.ecmascript-version", "2020")
+                .build();
+        context.getBindings("js").putMember("args", new String[0]);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close(true);
+        engine.close();
+    }
+
+    @Benchmark
+    public Object evaluate() {
+        final Value result = "cachedSource".equals(setup) ? context.eval(source) : context.eval("js", text);
+
+        if (function == null) {
+            return result.toString();
+        }
+        return context.getBindings("js").getMember(function).execute().toString();
+    }
+
+    private static Engine createEngine() {
+        try {
+            return Engine.newBuilder().option("engine.WarnInterpreterOnly", "false").build();
+        } catch (IllegalArgumentException ex) {
+            // 20.3 does not know the option
+            return Engine.create();
+        }
+    }
+}
@@ -1,12 +1,13 @@
 package com.extendedclip.papi.expansion.javascript;
 
+import com.extendedclip.papi.expansion.javascript.log.LogPipeline;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
-import org.bukkit.configuration.MemorySection;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -15,6 +16,7 @@ public class ExpansionUtils {
 
     public static final String PREFIX = "[PAPI] [Javascript-Expansion] ";
     private static final Logger logger = Bukkit.getLogger();
+    private static volatile LogPipeline pipeline;
 
     public static @NotNull String colorize(String s) {
         return ChatColor.translateAlternateColorCodes('&', s);
@@ -28,39 +30,86 @@ public class ExpansionUtils {
         return amount > 1 ? "s" : "";
     }
 
+    /**
+     * Moves logging to a background thread, until {@link #stopLogging()} messages are written
+     * on the calling thread.
+     */
+    public static synchronized void startLogging() {
+        if (pipeline == null) {
+            pipeline = new LogPipeline(logger, PREFIX);
+        }
+        pipeline.start();
+    }
+
+    public static synchronized void stopLogging() {
+        if (pipeline != null) {
+            pipeline.stop();
+            pipeline = null;
+        }
+    }
+
     public static void warnLog(String log, Throwable throwable) {
         warnLog(log, throwable, true);
     }
 
+    public static void warnLog(Supplier<String> log, Throwable throwable) {
+        if (logger.isLoggable(Level.WARNING)) {
+            warnLog(log.get(), throwable, true);
+        }
+    }
+
     public static void infoLog(final String log) {
         infoLog(log, true);
     }
 
     public static void infoLog(String log, boolean canPrefix) {
+        if (!logger.isLoggable(Level.INFO)) {
+            return;
+        }
+
         String prefix = "";
         if (canPrefix) prefix = PREFIX;
-        logger.info(colorize(prefix + log));
+        log(Level.INFO, colorize(prefix + log), null);
     }
 
     public static void warnLog(String log, Throwable throwable, boolean canPrefix) {
         String prefix = "";
         if (canPrefix) prefix = PREFIX;
-        if (throwable == null) {
-            logger.log(Level.WARNING, prefix + log);
-        } else logger.log(Level.WARNING, prefix + log, throwable);
+        log(Level.WARNING, prefix + log, throwable);
     }
 
     public static void errorLog(String log, Throwable throwable) {
         errorLog(log, throwable, true);
     }
 
+    public static void errorLog(Supplier<String> log, Throwable throwable) {
+        if (logger.isLoggable(Level.SEVERE)) {
+            errorLog(log.get(), throwable, true);
+        }
+    }
+
     public static void errorLog(String log, Throwable throwable, boolean canPrefix) {
         String prefix = "";
         if (canPrefix) prefix = PREFIX;
+        log(Level.SEVERE, prefix + log, throwable);
+    }
+
+    private static void log(Level level, String log, Throwable throwable) {
+        if (!logger.isLoggable(level)) {
+            return;
+        }
+
+        final LogPipeline pipeline = ExpansionUtils.pipeline;
+        if (pipeline != null && pipeline.isRunning()) {
+            // Full queue, the pipeline counts and reports the dropped message
+            pipeline.offer(level, log, throwable);
+            return;
+        }
+
         if (throwable == null) {
-            logger.log(Level.SEVERE, prefix + log);
+            logger.log(level, log);
         } else {
-            logger.log(Level.SEVERE, prefix + log, throwable);
+            logger.log(level, log, throwable);
         }
     }
 
@@ -95,25 +144,48 @@ public class ExpansionUtils {
         }
     }
 
-    protected static Object ymlToJavaObj(Object obj) {
-        if (obj instanceof MemorySection) {
-            MemorySection ymlMem = (MemorySection) obj;
-            if (ymlMem.isList(ymlMem.getCurrentPath())) {
-                ArrayList<Object> list = new ArrayList<>();
-                for (String entry : ymlMem.getKeys(true)) {
-                    list.add(ymlToJavaObj(ymlMem.get(entry)));
-                }
-                return list;
-            } else {
-                Map<String, Object> map = new HashMap<>();
-                for (String entry : ymlMem.getKeys(true)) {
-                    map.put(entry, ymlToJavaObj(ymlMem.get(entry)));
-                }
-                return map;
+    /**
+     * Rough estimate of the heap retained by a value stored in script data, based on the usual
+     * 64-bit object layouts. Objects owned by a script context are counted as a fixed size.
+     */
+    public static long estimateSize(Object obj) {
+        if (obj == null) {
+            return 0;
+        }
+
+        if (obj instanceof String) {
+            return 40 + 2L * ((String) obj).length();
+        }
+
+        if (obj instanceof Number || obj instanceof Boolean || obj instanceof Character) {
+            return 16;
+        }
+
+        if (obj instanceof Map && obj.getClass().getName().startsWith("java.")) {
+            long size = 48;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) obj).entrySet()) {
+                size += 32 + estimateSize(entry.getKey()) + estimateSize(entry.getValue());
             }
-        } else {
-            return obj;
+            return size;
+        }
+
+        if (obj instanceof Collection && obj.getClass().getName().startsWith("java.")) {
+            long size = 40;
+            for (Object element : (Collection<?>) obj) {
+                size += 8 + estimateSize(element);
+            }
+            return size;
         }
+
+        if (obj instanceof Object[]) {
+            long size = 16;
+            for (Object element : (Object[]) obj) {
+                size += 8 + estimateSize(element);
+            }
+            return size;
+        }
+
+        return 64;
     }
 
 }
@@ -20,39 +20,71 @@
  */
 package com.extendedclip.papi.expansion.javascript;
 
+import com.extendedclip.papi.expansion.javascript.argument.ArgumentSchema;
+import com.extendedclip.papi.expansion.javascript.argument.ParsedArguments;
+import com.extendedclip.papi.expansion.javascript.cache.InvalidationCache;
+import com.extendedclip.papi.expansion.javascript.cache.PairwiseCache;
 import com.extendedclip.papi.expansion.javascript.cloud.GithubScriptManager;
+import com.extendedclip.papi.expansion.javascript.data.DataTransport;
+import com.extendedclip.papi.expansion.javascript.data.LocalTransport;
+import com.extendedclip.papi.expansion.javascript.data.RedisTransport;
+import com.extendedclip.papi.expansion.javascript.data.SharedDataStore;
 import com.extendedclip.papi.expansion.javascript.manager.ConfigManager;
+import com.extendedclip.papi.expansion.javascript.manager.EngineManager;
 import com.extendedclip.papi.expansion.javascript.manager.JavascriptPlaceholdersManager;
+import com.extendedclip.papi.expansion.javascript.metrics.DurationStats;
+import com.extendedclip.papi.expansion.javascript.metrics.MetricsServer;
+import com.extendedclip.papi.expansion.javascript.profiler.ScriptProfiler;
 import com.oracle.truffle.api.Truffle;
+import me.clip.placeholderapi.PlaceholderAPI;
 import me.clip.placeholderapi.expansion.Cacheable;
 import me.clip.placeholderapi.expansion.Configurable;
 import me.clip.placeholderapi.expansion.PlaceholderExpansion;
+import me.clip.placeholderapi.expansion.Relational;
+import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
 import org.jetbrains.annotations.NotNull;
 
-import javax.script.ScriptEngineFactory;
-import javax.script.ScriptEngineManager;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 
-public class JavascriptExpansion extends PlaceholderExpansion implements Cacheable, Configurable {
+public class JavascriptExpansion extends PlaceholderExpansion implements Cacheable, Configurable, Relational {
 
-    private final ScriptEngineManager manager;
-    private JavascriptPlaceholdersManager config;
+    private final JavascriptPlaceholdersManager config;
     private final Set<JavascriptPlaceholder> scripts;
     private final String VERSION;
     private static JavascriptExpansion instance;
     private JavascriptExpansionCommands commands;
     private String argument_split;
+    private Pattern argumentPattern;
 
     private final ConfigManager confManager;
+    private final EngineManager engineManager;
     private GithubScriptManager githubManager;
+    private ReplContext replContext;
+    private ScriptProfiler profiler;
+    private MetricsServer metricsServer;
+    private TickBudget tickBudget = new TickBudget(0);
+    private BukkitTask evictionTask;
+    private SharedDataStore sharedData;
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final DurationStats reloadStats = new DurationStats();
 
     public JavascriptExpansion() {
         instance = this;
         this.VERSION = getClass().getPackage().getImplementationVersion();
-        this.scripts = new HashSet<>();
+        this.scripts = ConcurrentHashMap.newKeySet();
         this.confManager = new ConfigManager(this);
+        this.config = new JavascriptPlaceholdersManager(this);
+        this.engineManager = new EngineManager();
 
 //        PlaceholderAPIPlugin plugin = getPlaceholderAPI();
 //        try {
@@ -65,8 +97,6 @@ public class JavascriptExpansion extends PlaceholderExpansion implements Cacheab
 //
 //        Thread.currentThread().setContextClassLoader(getPlaceholderAPI().getClass().getSuperclass().getClassLoader());
         final Class<Truffle> truffle = Truffle.class;
-
-        this.manager = new ScriptEngineManager();
     }
 
     @Override
@@ -86,6 +116,7 @@ public class JavascriptExpansion extends PlaceholderExpansion implements Cacheab
 
     @Override
     public boolean register() {
+        ExpansionUtils.startLogging();
 
         this.argument_split = getConfigManager().getSplitStr();
 
@@ -94,27 +125,24 @@ public class JavascriptExpansion extends PlaceholderExpansion implements Cacheab
             ExpansionUtils.warnLog("Underscore character ('_') will not be allowed for splitting. Defaulting to ',' for this", null);
         }
 
-        if (getConfigManager().debugModeEnabled()) {
-            ExpansionUtils.infoLog("Java version: " + System.getProperty("java.version"));
-
-            final List<ScriptEngineFactory> factories = manager.getEngineFactories();
+        this.argumentPattern = Pattern.compile(argument_split);
 
-            ExpansionUtils.infoLog("Displaying all script engine factories.", false);
+        engineManager.create();
 
-            for (ScriptEngineFactory factory : factories) {
-                System.out.println(factory.getEngineName());
-                System.out.println("  Version: " + factory.getEngineVersion());
-                System.out.println("  Lang name: " + factory.getLanguageName());
-                System.out.println("  Lang version: " + factory.getLanguageVersion());
-                System.out.println("  Extensions: ." + String.join(", .", factory.getExtensions()));
-                System.out.println("  Mime types: " + String.join(", ", factory.getMimeTypes()));
-                System.out.println("  Names: " + String.join(", ", factory.getNames()));
-            }
+        if (getConfigManager().debugModeEnabled()) {
+            ExpansionUtils.infoLog("Java version: " + System.getProperty("java.version"));
+            engineManager.printReport();
         }
 
-        this.config = new JavascriptPlaceholdersManager(this);
+        // Scripts attach to the store while they are loaded
+        this.sharedData = createSharedData();
+        if (sharedData != null) {
+            sharedData.start();
+        }
 
+        final long start = System.nanoTime();
         int amountLoaded = config.loadPlaceholders();
+        reloadStats.record(System.nanoTime() - start);
         ExpansionUtils.infoLog(amountLoaded + " script" + ExpansionUtils.plural(amountLoaded) + " loaded!");
 
         if (getConfigManager().gitDownloadEnabled()) {
@@ -122,6 +150,22 @@ public class JavascriptExpansion extends PlaceholderExpansion implements Cacheab
             githubManager.fetch();
         }
 
+        this.replContext = new ReplContext(this, getConfigManager().getParseTimeout());
+        this.profiler = new ScriptProfiler(this);
+        this.tickBudget = new TickBudget((long) (getConfigManager().getTickBudget() * 1_000_000));
+        tickBudget.start(getPlaceholderAPI());
+
+        final long idleTimeout = TimeUnit.SECONDS.toMillis(getConfigManager().getContextIdleTimeout());
+        if (idleTimeout > 0) {
+            // Checked twice per timeout in ticks, between once a second and every 30 seconds
+            final long period = Math.max(20, Math.min(idleTimeout / 50 / 2, 600));
+            evictionTask = Bukkit.getScheduler().runTaskTimerAsynchronously(getPlaceholderAPI(), () -> evictIdleContexts(idleTimeout), period, period);
+        }
+
+        if (getConfigManager().metricsEnabled()) {
+            metricsServer = new MetricsServer(this, getConfigManager().getMetricsPort());
+            metricsServer.start();
+        }
         this.commands = new JavascriptExpansionCommands(this);
         commands.registerCommand();
 
@@ -132,17 +176,45 @@ public class JavascriptExpansion extends PlaceholderExpansion implements Cacheab
     public void clear() {
         commands.unregisterCommand();
 
-        scripts.forEach(script -> {
-            script.saveData();
-            script.cleanup();
-        });
+        unloadScripts();
+
+        // After the scripts saved, their last changes are written before disconnecting
+        if (sharedData != null) {
+            sharedData.stop();
+            sharedData = null;
+        }
 
         if (githubManager != null) {
             githubManager.clear();
             githubManager = null;
         }
 
-        scripts.clear();
+        if (replContext != null) {
+            replContext.close();
+            replContext = null;
+        }
+
+        if (profiler != null) {
+            profiler.stopAll();
+            profiler = null;
+        }
+
+        if (metricsServer != null) {
+            metricsServer.stop();
+            metricsServer = null;
+        }
+
+        if (tickBudget != null) {
+            tickBudget.stop();
+        }
+
+        if (evictionTask != null) {
+            evictionTask.cancel();
+            evictionTask = null;
+        }
+
+        engineManager.close();
+        ExpansionUtils.stopLogging();
         instance = null;
     }
 
@@ -152,23 +224,197 @@ public class JavascriptExpansion extends PlaceholderExpansion implements Cacheab
             return "";
         }
 
+        final Match match = match(identifier);
+        return match == null ? null : coalesce(match.script, match.function, player, match.params);
+    }
+
+    /**
+     * Relational placeholders, %rel_javascript_&lt;identifier&gt;%, evaluated for player one
+     * looking at player two. Results are kept per pair for the script's relational-ttl.
+     */
+    @Override
+    public String onPlaceholderRequest(Player one, Player two, String identifier) {
+        if (one == null || two == null || scripts.size() == 0) {
+            return "";
+        }
+
+        final Match match = match(identifier);
+
+        if (match == null) {
+            return null;
+        }
+
+        final PairwiseCache pairwiseCache = match.script.getPairwiseCache();
+        final String key = (match.function == null ? "" : match.function) + '\0' + match.params;
+
+        if (pairwiseCache != null) {
+            final String cached = pairwiseCache.get(one.getUniqueId(), two.getUniqueId(), key);
+
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        final String result = compute(match.script, match.function, one, two, match.params);
+
+        if (pairwiseCache != null && isCacheable(result)) {
+            pairwiseCache.put(one, two, key, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return the script and function the placeholder refers to, null if there is none
+     */
+    private Match match(String identifier) {
         for (JavascriptPlaceholder script : scripts) {
             if (identifier.startsWith(script.getIdentifier() + "_")) {
-                identifier = identifier.replaceFirst(script.getIdentifier() + "_", "");
+                String params = identifier.substring(script.getIdentifier().length() + 1);
+                String function = null;
+
+                if (script.hasFunctions()) {
+                    function = script.matchFunction(params);
 
-                return !identifier.contains(argument_split) ?
-                        script.evaluate(player, identifier) :
-                        script.evaluate(player, identifier.split(argument_split));
+                    if (function == null) {
+                        return null;
+                    }
+
+                    params = params.length() == function.length() ? "" : params.substring(function.length() + 1);
+                }
+
+                return new Match(script, function, params);
             }
 
             if (identifier.equalsIgnoreCase(script.getIdentifier())) {
-                return script.evaluate(player);
+                return script.hasFunctions() ? null : new Match(script, null, "");
             }
         }
 
         return null;
     }
 
+    /**
+     * Lets concurrent requests for the same placeholder of the same player share one evaluation,
+     * requests arriving while it runs wait for its result instead of evaluating again.
+     */
+    private String coalesce(JavascriptPlaceholder script, String function, OfflinePlayer player, String params) {
+        // Requested by a script, e.g. through its result or 'uses'. The thread holds a script lock
+        // the evaluation it would wait for may need, nested requests always evaluate themselves
+        if (JavascriptPlaceholder.isEvaluating()) {
+            return evaluate(script, function, player, params);
+        }
+
+        final String key = script.getIdentifier() + '\0' + player.getUniqueId() + '\0' + (function == null ? "" : function) + '\0' + params;
+        final CompletableFuture<String> flight = new CompletableFuture<>();
+        final CompletableFuture<String> running = inFlight.putIfAbsent(key, flight);
+
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException | CancellationException ex) {
+                return evaluate(script, function, player, params);
+            }
+        }
+
+        try {
+            final String result = evaluate(script, function, player, params);
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException ex) {
+            flight.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private String evaluate(JavascriptPlaceholder script, String function, OfflinePlayer player, String params) {
+        final InvalidationCache invalidationCache = script.getInvalidationCache();
+        // Events only invalidate results of online players
+        final boolean invalidatable = invalidationCache != null && player.isOnline();
+
+        if (!invalidatable && !tickBudget.isEnabled()) {
+            return compute(script, function, player, params);
+        }
+
+        final String key = (function == null ? "" : function) + '\0' + params;
+
+        if (invalidatable) {
+            final String cached = invalidationCache.get(player.getUniqueId(), key);
+
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        if (!tickBudget.isEnabled()) {
+            final Map<String, String> results = invalidationCache.getResults(player.getUniqueId());
+            return cacheResult(invalidationCache, results, key, compute(script, function, player, params));
+        }
+
+        final String budgetKey = script.getIdentifier() + '\0' + player.getUniqueId() + '\0' + key;
+        final Supplier<String> computation = () -> compute(script, function, player, params);
+        final String stale = tickBudget.getStale(budgetKey, computation);
+
+        // Served as is, an outdated value must not end up in the invalidation cache
+        if (stale != null) {
+            return stale;
+        }
+
+        final Map<String, String> results = invalidatable ? invalidationCache.getResults(player.getUniqueId()) : null;
+        final String result = tickBudget.compute(budgetKey, computation);
+        return invalidatable ? cacheResult(invalidationCache, results, key, result) : result;
+    }
+
+    private static String cacheResult(InvalidationCache invalidationCache, Map<String, String> results, String key, String result) {
+        if (isCacheable(result)) {
+            invalidationCache.put(results, key, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return false for missing results and script errors, the next request evaluates again
+     */
+    private static boolean isCacheable(String result) {
+        return result != null && !JavascriptPlaceholder.ERROR_RESULT.equals(result);
+    }
+
+    private String compute(JavascriptPlaceholder script, String function, OfflinePlayer player, String params) {
+        return compute(script, function, player, null, params);
+    }
+
+    /**
+     * @param relation the player viewed for relational placeholders, null otherwise
+     */
+    private String compute(JavascriptPlaceholder script, String function, OfflinePlayer player, Player relation, String params) {
+        final ArgumentSchema schema = script.getArgumentSchema();
+
+        if (schema != null) {
+            // Only arguments without bracket placeholders are the same on every request. Like
+            // plain arguments, they are split before their bracket placeholders are set
+            final ParsedArguments arguments = params.indexOf('{') == -1 ?
+                    schema.parse(params) :
+                    schema.parseUncached(params, value -> PlaceholderAPI.setBracketPlaceholders(player, value));
+
+            return relation == null ?
+                    script.evaluate(function, player, arguments) :
+                    script.evaluateRelational(function, (Player) player, relation, arguments);
+        }
+
+        final String[] args;
+        if (params.isEmpty()) {
+            args = new String[0];
+        } else {
+            args = !params.contains(argument_split) ? new String[]{params} : argumentPattern.split(params);
+        }
+
+        if (relation != null) {
+            return script.evaluateRelational(function, (Player) player, relation, args);
+        }
+        return function == null ? script.evaluate(player, args) : script.evaluateFunction(function, player, args);
+    }
+
     public boolean addJSPlaceholder(JavascriptPlaceholder placeholder) {
         if (placeholder == null) {
             return false;
@@ -187,14 +433,22 @@ public class JavascriptExpansion extends PlaceholderExpansion implements Cacheab
         return true;
     }
 
-//    public Set<JavascriptPlaceholder> getJSPlaceholders() {
-//        return scripts;
-//    }
+    public Set<JavascriptPlaceholder> getJSPlaceholders() {
+        return Collections.unmodifiableSet(scripts);
+    }
 
     public List<String> getLoadedIdentifiers() {
-        return scripts.stream()
-                .map(JavascriptPlaceholder::getIdentifier)
-                .collect(Collectors.toList());
+        final List<String> identifiers = new ArrayList<>();
+
+        for (JavascriptPlaceholder script : scripts) {
+            if (!script.hasFunctions()) {
+                identifiers.add(script.getIdentifier());
+                continue;
+            }
+
+            script.getFunctionNames().forEach(function -> identifiers.add(script.getIdentifier() + "_" + function));
+        }
+        return identifiers;
     }
 
     public JavascriptPlaceholder getJSPlaceholder(String identifier) {
@@ -208,6 +462,10 @@ public class JavascriptExpansion extends PlaceholderExpansion implements Cacheab
         return scripts.size();
     }
 
+    public Pattern getArgumentPattern() {
+        return argumentPattern;
+    }
+
     public JavascriptPlaceholdersManager getConfig() {
         return config;
     }
@@ -218,19 +476,67 @@ public class JavascriptExpansion extends PlaceholderExpansion implements Cacheab
         defaults.put("debug", false);
         defaults.put("argument_split", ",");
         defaults.put("github_script_downloads", false);
+        defaults.put("parse_command_timeout", 5000);
+        defaults.put("data_soft_limit", 0);
+        defaults.put("data_hard_limit", 0);
+        defaults.put("context_idle_timeout", 0);
+        defaults.put("data_prefetch", false);
+        defaults.put("tick_budget_ms", 0);
+        defaults.put("metrics_enabled", false);
+        defaults.put("metrics_port", 9465);
+        defaults.put("shared_data_transport", "none");
+        defaults.put("shared_data_redis_host", "127.0.0.1");
+        defaults.put("shared_data_redis_port", 6379);
+        defaults.put("shared_data_redis_password", "");
+        defaults.put("shared_data_flush_interval", 100);
 
         return defaults;
     }
 
     public int reloadScripts() {
-        scripts.forEach(script -> {
+        final long start = System.nanoTime();
+        unloadScripts();
+        tickBudget.clear();
+        getConfigManager().reload();
+
+        final int amountLoaded = config.loadPlaceholders();
+        reloadStats.record(System.nanoTime() - start);
+        return amountLoaded;
+    }
+
+    private SharedDataStore createSharedData() {
+        final ConfigManager configManager = getConfigManager();
+        final DataTransport transport;
+
+        switch (configManager.getSharedDataTransport()) {
+            case "none":
+                return null;
+            case "redis":
+                transport = new RedisTransport(configManager.getSharedDataRedisHost(), configManager.getSharedDataRedisPort(), configManager.getSharedDataRedisPassword());
+                break;
+            case "local":
+                transport = new LocalTransport();
+                break;
+            default:
+                ExpansionUtils.warnLog("Unknown shared_data_transport '" + configManager.getSharedDataTransport() + "', expected none, redis or local", null);
+                return null;
+        }
+        return new SharedDataStore(transport, configManager.getSharedDataFlushInterval());
+    }
+
+    private void evictIdleContexts(long idleTimeout) {
+        scripts.forEach(script -> script.evictIfIdle(idleTimeout));
+    }
+
+    private void unloadScripts() {
+        // Detached first so no request reaches a placeholder while its context is being closed
+        final List<JavascriptPlaceholder> unloaded = new ArrayList<>(scripts);
+        scripts.clear();
+
+        unloaded.forEach(script -> {
             script.saveData();
             script.cleanup();
         });
-
-        scripts.clear();
-        getConfigManager().reload();
-        return config.loadPlaceholders();
     }
 
     public static JavascriptExpansion getInstance() {
@@ -249,4 +555,44 @@ public class JavascriptExpansion extends PlaceholderExpansion implements Cacheab
     public ConfigManager getConfigManager() {
         return confManager;
     }
+
+    /**
+     * @return the store scripts share their data through, null if shared data is disabled
+     */
+    public SharedDataStore getSharedData() {
+        return sharedData;
+    }
+
+    public TickBudget getTickBudget() {
+        return tickBudget;
+    }
+
+    public DurationStats getReloadStats() {
+        return reloadStats;
+    }
+
+    public ScriptProfiler getProfiler() {
+        return profiler;
+    }
+
+    public ReplContext getReplContext() {
+        return replContext;
+    }
+
+    public EngineManager getEngineManager() {
+        return engineManager;
+    }
+
+    private static final class Match {
+
+        private final JavascriptPlaceholder script;
+        private final String function;
+        private final String params;
+
+        private Match(JavascriptPlaceholder script, String function, String params) {
+            this.script = script;
+            this.function = function;
+            this.params = params;
+        }
+    }
 }
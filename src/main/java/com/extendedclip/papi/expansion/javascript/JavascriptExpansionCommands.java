@@ -69,7 +69,10 @@ public class JavascriptExpansionCommands extends Command {
                 new GitCommand(expansion),
                 new ListCommand(expansion),
                 new ParseCommand(expansion),
+                new ProfileCommand(expansion),
                 new ReloadCommand(expansion),
+                new StatsCommand(expansion),
+                new MemoryCommand(expansion),
                 new DebugCommand(expansion))
         );
     }
@@ -112,7 +115,7 @@ public class JavascriptExpansionCommands extends Command {
             return Collections.emptyList();
         }
 
-        final List<String> commands = new ArrayList<>(Arrays.asList("list", "parse", "reload"));
+        final List<String> commands = new ArrayList<>(Arrays.asList("list", "memory", "parse", "profile", "reload", "stats"));
         final List<String> completion = new ArrayList<>();
 
         if (expansion.getGithubScriptManager() != null) {
@@ -129,15 +132,15 @@ public class JavascriptExpansionCommands extends Command {
             }
 
             if (args.length == 2) {
-                return StringUtil.copyPartialMatches(args[1], Arrays.asList("download", "enable", "info", "list", "refresh"), completion);
+                return StringUtil.copyPartialMatches(args[1], Arrays.asList("download", "download-all", "enable", "info", "list", "refresh"), completion);
             }
 
-            if (args.length == 3 && args[1].equalsIgnoreCase("download")) {
+            if (args.length >= 3 && args[1].equalsIgnoreCase("download")) {
                 if (expansion.getGithubScriptManager().getAvailableScripts() == null) {
                     return Collections.emptyList();
                 }
 
-                return StringUtil.copyPartialMatches(args[2], expansion.getGithubScriptManager().getAvailableScripts().stream().map(GithubScript::getName).collect(Collectors.toList()), completion);
+                return StringUtil.copyPartialMatches(args[args.length - 1], expansion.getGithubScriptManager().getAvailableScripts().stream().map(GithubScript::getName).collect(Collectors.toList()), completion);
             }
         }
 
@@ -153,13 +156,17 @@ public class JavascriptExpansionCommands extends Command {
                 "&e/" + command + " reload &7- &fReload your javascripts without reloading PlaceholderAPI.",
                 "&e/" + command + " list &7- &fList loaded script identifiers.",
                 "&e/" + command + " parse [me/player] [code] &7- &fTest JavaScript code in chat.",
+                "&e/" + command + " stats [identifier] &7- &fShow the cache statistics of your scripts.",
+                "&e/" + command + " memory [identifier] &7- &fShow how much memory the data of your scripts uses.",
+                "&e/" + command + " profile [identifier] [seconds] &7- &fSample which functions of a script are hot.",
                 "&e/" + command + " debug [savedata/loaddata] [identifier] &7- &fTest JavaScript code in chat."
         );
 
         if (expansion.getGithubScriptManager() != null) {
             ExpansionUtils.sendMsg(sender,
                     "&e/" + command + " git refresh &7- &fRefresh available Github scripts",
-                    "&e/" + command + " git download [name] &7- &fDownload a script from the js expansion github.",
+                    "&e/" + command + " git download [name...] &7- &fDownload one or more scripts from the js expansion github.",
+                    "&e/" + command + " git download-all &7- &fDownload every script from the js expansion github which you don't have yet.",
                     "&e/" + command + " git list &7- &fList available scripts in the js expansion github.",
                     "&e/" + command + " git info [name] &7- &fGet the description and url of a specific script."
             );
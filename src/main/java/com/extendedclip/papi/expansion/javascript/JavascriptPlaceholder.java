@@ -20,9 +20,16 @@
  */
 package com.extendedclip.papi.expansion.javascript;
 
+import com.extendedclip.papi.expansion.javascript.argument.ArgumentSchema;
+import com.extendedclip.papi.expansion.javascript.argument.ParsedArguments;
+import com.extendedclip.papi.expansion.javascript.cache.InvalidationCache;
+import com.extendedclip.papi.expansion.javascript.cache.PairwiseCache;
+import com.extendedclip.papi.expansion.javascript.cache.ScriptCache;
+import com.extendedclip.papi.expansion.javascript.data.SharedDataStore;
+import com.extendedclip.papi.expansion.javascript.metrics.ScriptMetrics;
 import com.extendedclip.papi.expansion.javascript.parser.JavascriptParser;
+import com.extendedclip.papi.expansion.javascript.parser.PlaceholderDependency;
 import com.extendedclip.papi.expansion.javascript.parser.UtilityParser;
-import com.oracle.truffle.js.scriptengine.GraalJSScriptEngine;
 import me.clip.placeholderapi.PlaceholderAPI;
 import me.clip.placeholderapi.PlaceholderAPIPlugin;
 import org.apache.commons.lang.Validate;
@@ -30,23 +37,80 @@ import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
 import org.graalvm.polyglot.Context;
-import org.graalvm.polyglot.HostAccess;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.Source;
 import org.graalvm.polyglot.Value;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class JavascriptPlaceholder {
 
-    private Context context;
+    public static final int DEFAULT_CACHE_SIZE = 1000;
+    // Returned when a script fails, never cached as a result
+    public static final String ERROR_RESULT = "Script error (check console)";
+    private static final int MAX_REPORTED_ERRORS = 100;
+    // Script locks held by the current thread, see isEvaluating()
+    private static final ThreadLocal<int[]> EVALUATING = ThreadLocal.withInitial(() -> new int[1]);
+
+    // Defines DataVar as a getter which loads the data on first access, then replaces itself with the map.
+    // Counters are kept apart from the map, scripts read them through Data
+    private static final Source DATA_VAR = Source.newBuilder("js",
+            "(function (data) {\n"
+                    + "    Object.defineProperty(globalThis, 'DataVar', {\n"
+                    + "        configurable: true,\n"
+                    + "        get: function () {\n"
+                    + "            var map = data.getData();\n"
+                    + "            Object.defineProperty(globalThis, 'DataVar', { value: map, writable: true, configurable: true });\n"
+                    + "            return map;\n"
+                    + "        },\n"
+                    + "        set: function (value) {\n"
+                    + "            Object.defineProperty(globalThis, 'DataVar', { value: value, writable: true, configurable: true });\n"
+                    + "        }\n"
+                    + "    });\n"
+                    + "})", "data-var").buildLiteral();
+
+    private volatile Context context;
+    // Runs the async tasks of the Scheduler, requests never wait for them
+    private volatile Context taskContext;
+    private volatile boolean closed;
+    // Guarded by the lock
+    private boolean preloaded;
+    private boolean tasksReported;
+    private volatile long lastUsed;
+    private boolean functionsChecked;
     private final String identifier;
     private final String script;
+    private final Source source;
     private ScriptData scriptData;
     private final File dataFile;
     private YamlConfiguration yaml;
-    private boolean firstInit;
+    private SharedDataStore sharedData;
+    private final List<String> functionNames = new ArrayList<>();
+    private final Map<String, Value> functions = new HashMap<>();
+    private ArgumentSchema argumentSchema;
+    private List<PlaceholderDependency> dependencies = Collections.emptyList();
+    private ScriptCache cache;
+    private InvalidationCache invalidationCache;
+    // Created on the first relational request, most scripts never get one
+    private volatile PairwiseCache pairwiseCache;
+    private volatile long relationalTtl;
+    private final ScriptScheduler scheduler;
+    private final ScriptMetrics metrics = new ScriptMetrics();
+    private final AtomicLong evictions = new AtomicLong();
+    private final Set<String> reportedErrors = new HashSet<>();
+    // A context can only be entered by one thread at a time
+    private final Object lock = new Object();
+    private final Object taskLock = new Object();
+    private final Object pairwiseLock = new Object();
+    // Held while the data file is written, loading waits for it
+    private final ReentrantLock saveLock = new ReentrantLock();
+    private final Map<Source, Value> taskFunctions = new HashMap<>();
 
     @SuppressWarnings("ResultOfMethodCallIgnored")
     public JavascriptPlaceholder(String identifier, String script) {
@@ -54,9 +118,10 @@ public class JavascriptPlaceholder {
         Validate.notNull(script, "Script can not be null");
 
         String dir = PlaceholderAPIPlugin.getInstance().getDataFolder() + "/javascripts/javascript_data";
-        this.firstInit = true;
         this.identifier = identifier;
         this.script = script;
+        // Built once so the shared engine can reuse the parsed code between evaluations
+        this.source = Source.newBuilder("js", script, identifier).buildLiteral();
         final File directory = new File(dir);
 
         if (!directory.exists()) {
@@ -64,22 +129,53 @@ public class JavascriptPlaceholder {
         }
 
         scriptData = new ScriptData();
+        cache = new ScriptCache(DEFAULT_CACHE_SIZE, 0);
+        scheduler = new ScriptScheduler(this);
         dataFile = new File(directory, identifier + "_data.yml");
-        this.context = Context.newBuilder("js")
-                .allowAllAccess(true)
-                .allowExperimentalOptions(true)
-                .allowHostAccess(HostAccess.ALL)
-                .allowHostClassLoading(true)
-                .option("js.ecmascript-version", "2020").build();
+    }
+
+    /**
+     * Gets the context, it is created on first use and after it was evicted. Must be called with the lock held.
+     *
+     * @return null once the placeholder is cleaned up
+     */
+    private Context getContext() {
+        if (closed) {
+            return null;
+        }
+
+        if (context == null) {
+            context = createContext();
+
+            // Cleaned up while the context was being built
+            if (closed) {
+                closeContext();
+                return null;
+            }
+        }
+
+        lastUsed = System.currentTimeMillis();
+        return context;
+    }
+
+    private Context createContext() {
+        final Context context = JavascriptExpansion.getInstance().getEngineManager().createContext();
 
         Value binding = context.getBindings("js");
         binding.putMember("Data", scriptData);
-        binding.putMember("DataVar", scriptData.getData());
+        context.eval(DATA_VAR).execute(scriptData);
+        binding.putMember("Cache", cache);
+        binding.putMember("Scheduler", scheduler);
         binding.putMember("BukkitServer", Bukkit.getServer());
         binding.putMember("Expansion", JavascriptExpansion.getInstance());
         binding.putMember("Placeholder", this);
         binding.putMember("PlaceholderAPI", PlaceholderAPI.class);
         binding.putMember("UtilityParser", UtilityParser.getInstance());
+
+        if (hasFunctions()) {
+            loadFunctions(context);
+        }
+        return context;
     }
 
     public String getIdentifier() {
@@ -87,51 +183,399 @@ public class JavascriptPlaceholder {
     }
 
     public String evaluate(OfflinePlayer player, String... args) {
+        return execute(null, player, null, setBracketPlaceholders(player, args), null);
+    }
 
-        Value binding = context.getBindings("js");
+    public String evaluateFunction(String function, OfflinePlayer player, String... args) {
+        return execute(function, player, null, setBracketPlaceholders(player, args), null);
+    }
 
-        try {
-            String[] arguments = null;
+    /**
+     * Evaluates a relational placeholder, the player viewed is bound as 'RelationalPlayer'.
+     *
+     * @param function the function to call, null to evaluate the script
+     */
+    public String evaluateRelational(String function, Player one, Player two, String... args) {
+        return execute(function, one, two, setBracketPlaceholders(one, args), null);
+    }
+
+    /**
+     * Evaluates with arguments parsed by the script's {@link ArgumentSchema}, they are bound as
+     * both the raw 'args' array and the typed 'Args' object.
+     */
+    public String evaluate(String function, OfflinePlayer player, ParsedArguments arguments) {
+        if (!arguments.isValid()) {
+            reportArgumentError(arguments.getError());
+            return "";
+        }
+
+        // Copied as scripts may write to args, the parsed arguments are shared between requests
+        return execute(function, player, null, arguments.getRaw().clone(), arguments.getProxy());
+    }
+
+    public String evaluateRelational(String function, Player one, Player two, ParsedArguments arguments) {
+        if (!arguments.isValid()) {
+            reportArgumentError(arguments.getError());
+            return "";
+        }
+        return execute(function, one, two, arguments.getRaw().clone(), arguments.getProxy());
+    }
+
+    /**
+     * Logs invalid arguments instead of showing them to players, each error once until many
+     * different ones were reported.
+     */
+    private void reportArgumentError(String error) {
+        synchronized (reportedErrors) {
+            if (reportedErrors.size() >= MAX_REPORTED_ERRORS) {
+                reportedErrors.clear();
+            }
+
+            if (!reportedErrors.add(error)) {
+                return;
+            }
+        }
+        ExpansionUtils.warnLog("Invalid arguments for '" + identifier + "': " + error, null);
+    }
+
+    private String[] setBracketPlaceholders(OfflinePlayer player, String... args) {
+        if (args == null || args.length == 0) {
+            return new String[]{};
+        }
+
+        final String[] arguments = new String[args.length];
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] == null || args[i].isEmpty()) {
+                continue;
+            }
+            arguments[i] = PlaceholderAPI.setBracketPlaceholders(player, args[i]);
+        }
+        return arguments;
+    }
 
-            if (args != null && args.length > 0) {
-                arguments = new String[args.length];
+    private String execute(String function, OfflinePlayer player, Player relation, String[] arguments, Object typedArguments) {
+        final long start = System.nanoTime();
 
-                for (int i = 0; i < args.length; i++) {
-                    if (args[i] == null || args[i].isEmpty()) {
-                        continue;
-                    }
-                    arguments[i] = PlaceholderAPI.setBracketPlaceholders(player, args[i]);
+        try {
+            synchronized (lock) {
+                final int[] depth = EVALUATING.get();
+                depth[0]++;
+                try {
+                    return executeLocked(function, player, relation, arguments, typedArguments);
+                } finally {
+                    depth[0]--;
+                    reportLateTasks();
                 }
             }
+        } finally {
+            metrics.recordEvaluation(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Tasks scheduled by the top-level code of a script with functions only start once the
+     * context is built, which is the first request unless the script is preloaded.
+     */
+    private void reportLateTasks() {
+        if (tasksReported || preloaded || !hasFunctions() || scheduler.size() == 0) {
+            return;
+        }
+
+        tasksReported = true;
+        ExpansionUtils.infoLog("'" + identifier + "' scheduled tasks on its first request, set 'preload: true' to start them when it is loaded");
+    }
+
+    /**
+     * @return true while the current thread runs a script, a placeholder requested now is nested
+     * in it and must not wait for other threads: they may be waiting for the lock it holds
+     */
+    public static boolean isEvaluating() {
+        return EVALUATING.get()[0] > 0;
+    }
+
+    private String executeLocked(String functionName, OfflinePlayer player, Player relation, String[] arguments, Object typedArguments) {
+        try {
+            final Context context = getContext();
+
+            if (context == null) {
+                // Cleaned up while the request was on its way
+                return "";
+            }
 
-            if (arguments == null) {
-                arguments = new String[]{};
+            // Resolved here, a function belongs to the context it was created in
+            Value function = null;
+            if (functionName != null) {
+                function = functions.get(functionName);
+
+                if (function == null) {
+                    return null;
+                }
             }
 
+            Value binding = context.getBindings("js");
             binding.putMember("args", arguments);
 
-            if (player != null && player.isOnline()) {
-                binding.putMember("BukkitPlayer", player.getPlayer());
-                binding.putMember("Player", player.getPlayer());
+            if (typedArguments != null) {
+                binding.putMember("Args", typedArguments);
             }
 
+            // Always bound, the context is reused and must not keep the previous caller
+            final Player online = player != null && player.isOnline() ? player.getPlayer() : null;
+            binding.putMember("BukkitPlayer", online);
+            binding.putMember("Player", online);
+
             binding.putMember("OfflinePlayer", player);
+            // Null outside of relational placeholders
+            binding.putMember("RelationalPlayer", relation);
             binding.putMember("Parser", new JavascriptParser(player));
-            Value val = context.eval("js", script);
+
+            for (PlaceholderDependency dependency : dependencies) {
+                binding.putMember(dependency.getVariable(), dependency.resolve(player));
+            }
+
+            Value val = function == null ? context.eval(source) : function.execute((Object) arguments);
             Object result = ExpansionUtils.jsonToJava(val);
 
-            if (firstInit) {
-                firstInit = false;
+            if (result == null) {
+                return "";
             }
 
-            return result != null ? PlaceholderAPI.setPlaceholders(player, result.toString()) : "";
+            final String text = result.toString();
+            // Skip the full PlaceholderAPI scan when there is nothing to replace or colorize
+            return text.indexOf('%') == -1 && text.indexOf('&') == -1 ? text : PlaceholderAPI.setPlaceholders(player, text);
 
         } catch (IllegalStateException ex) {
-            ExpansionUtils.errorLog("An error occurred while executing the script '" + identifier + "':\n\t" + ex.getMessage(), null);
+            ExpansionUtils.errorLog(() -> "An error occurred while executing the script '" + identifier + "':\n\t" + ex.getMessage(), null);
         } catch (ArrayIndexOutOfBoundsException ex) {
-            ExpansionUtils.errorLog("Argument out of bound while executing script '" + identifier + "':\n\t" + ex.getMessage(), null);
+            ExpansionUtils.errorLog(() -> "Argument out of bound while executing script '" + identifier + "':\n\t" + ex.getMessage(), null);
+        } catch (PolyglotException ex) {
+            if (ex.isCancelled()) {
+                return "";
+            }
+            ExpansionUtils.errorLog(() -> "An error occurred while executing the script '" + identifier + "':\n\t" + ex.getMessage(), null);
+        }
+        metrics.recordError();
+        return ERROR_RESULT;
+    }
+
+    /**
+     * Runs a function registered through the {@link ScriptScheduler}.
+     */
+    public void runTask(Value function) {
+        synchronized (lock) {
+            if (context == null) {
+                return;
+            }
+
+            final int[] depth = EVALUATING.get();
+            depth[0]++;
+            try {
+                function.execute();
+            } catch (PolyglotException ex) {
+                if (!ex.isCancelled()) {
+                    ExpansionUtils.errorLog(() -> "An error occurred while running a scheduled task of '" + identifier + "':\n\t" + ex.getMessage(), null);
+                }
+            } catch (IllegalStateException ex) {
+                ExpansionUtils.errorLog(() -> "An error occurred while running a scheduled task of '" + identifier + "':\n\t" + ex.getMessage(), null);
+            } finally {
+                depth[0]--;
+            }
+        }
+    }
+
+    /**
+     * Runs a function registered through {@link ScriptScheduler#everyAsync}, in the task context
+     * so requests are not held up. The context only has the bindings shared with requests.
+     */
+    public void runAsyncTask(Source function) {
+        synchronized (taskLock) {
+            if (closed) {
+                return;
+            }
+
+            try {
+                if (taskContext == null) {
+                    taskContext = createTaskContext();
+                }
+
+                Value task = taskFunctions.get(function);
+                if (task == null) {
+                    task = taskContext.eval(function);
+                    taskFunctions.put(function, task);
+                }
+                task.execute();
+            } catch (PolyglotException ex) {
+                if (!ex.isCancelled()) {
+                    ExpansionUtils.errorLog(() -> "An error occurred while running a scheduled task of '" + identifier + "':\n\t" + ex.getMessage(), null);
+                }
+            } catch (IllegalStateException ex) {
+                ExpansionUtils.errorLog(() -> "An error occurred while running a scheduled task of '" + identifier + "':\n\t" + ex.getMessage(), null);
+            }
+        }
+    }
+
+    private Context createTaskContext() {
+        final Context context = JavascriptExpansion.getInstance().getEngineManager().createContext();
+
+        Value binding = context.getBindings("js");
+        binding.putMember("Data", scriptData);
+        binding.putMember("Cache", cache);
+        binding.putMember("BukkitServer", Bukkit.getServer());
+        binding.putMember("Expansion", JavascriptExpansion.getInstance());
+        binding.putMember("Placeholder", this);
+        binding.putMember("PlaceholderAPI", PlaceholderAPI.class);
+        binding.putMember("UtilityParser", UtilityParser.getInstance());
+        return context;
+    }
+
+    public ScriptMetrics getMetrics() {
+        return metrics;
+    }
+
+    public ScriptScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public boolean hasFunctions() {
+        return !functionNames.isEmpty();
+    }
+
+    public List<String> getFunctionNames() {
+        return functionNames;
+    }
+
+    public void setFunctionNames(List<String> names) {
+        functionNames.clear();
+        names.stream()
+                .distinct()
+                .sorted(Comparator.comparingInt(String::length).reversed())
+                .forEach(functionNames::add);
+    }
+
+    /**
+     * Runs the script once and resolves every exported function, so requests dispatch
+     * straight to the function instead of re-running the whole script. Functions which can not
+     * be found are reported the first time the context is built.
+     */
+    private void loadFunctions(Context context) {
+        final List<String> missing = new ArrayList<>();
+        functions.clear();
+
+        // Not run for a request, top-level code reading args sees no arguments
+        context.getBindings("js").putMember("args", new String[0]);
+
+        try {
+            context.eval(source);
+        } catch (PolyglotException ex) {
+            ExpansionUtils.errorLog("An error occurred while loading the functions of '" + identifier + "':\n\t" + ex.getMessage(), null);
+            return;
+        }
+
+        final Value binding = context.getBindings("js");
+        for (String name : functionNames) {
+            final Value function = binding.getMember(name);
+
+            if (function == null || !function.canExecute()) {
+                missing.add(name);
+                continue;
+            }
+            functions.put(name, function);
+        }
+
+        if (!missing.isEmpty() && !functionsChecked) {
+            ExpansionUtils.warnLog("Script '" + identifier + "' does not define the function" + ExpansionUtils.plural(missing.size()) + " " + missing, null);
+        }
+        functionsChecked = true;
+    }
+
+    /**
+     * Finds the exported function a request is for, the longest name wins so 'getint'
+     * is not handled by 'get'.
+     *
+     * @param params the request without the script identifier, e.g. 'get_some.path'
+     * @return the function name, or null if none matches
+     */
+    public String matchFunction(String params) {
+        for (String name : functionNames) {
+            if (params.equals(name) || params.startsWith(name + "_")) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    public ArgumentSchema getArgumentSchema() {
+        return argumentSchema;
+    }
+
+    public void setArgumentSchema(ArgumentSchema argumentSchema) {
+        this.argumentSchema = argumentSchema;
+    }
+
+    public List<PlaceholderDependency> getDependencies() {
+        return dependencies;
+    }
+
+    public void setDependencies(List<String> placeholders) {
+        final List<PlaceholderDependency> dependencies = new ArrayList<>(placeholders.size());
+        placeholders.forEach(placeholder -> dependencies.add(new PlaceholderDependency(placeholder)));
+        this.dependencies = dependencies;
+    }
+
+    public ScriptCache getCache() {
+        return cache;
+    }
+
+    public void setCache(ScriptCache cache) {
+        this.cache = cache;
+
+        if (context != null) {
+            context.getBindings("js").putMember("Cache", cache);
+        }
+    }
+
+    /**
+     * Gets the cache of relational results, it is created and registered on the first request.
+     *
+     * @return null if relational results are not reused or the placeholder is cleaned up
+     */
+    public PairwiseCache getPairwiseCache() {
+        if (pairwiseCache != null || relationalTtl <= 0 || closed) {
+            return pairwiseCache;
+        }
+
+        synchronized (pairwiseLock) {
+            if (pairwiseCache == null && !closed) {
+                final PairwiseCache created = new PairwiseCache(relationalTtl);
+                created.register();
+                pairwiseCache = created;
+            }
+            return pairwiseCache;
+        }
+    }
+
+    /**
+     * @param relationalTtl time in milliseconds relational results are reused, 0 to evaluate every request
+     */
+    public void setRelationalTtl(long relationalTtl) {
+        this.relationalTtl = relationalTtl;
+    }
+
+    public InvalidationCache getInvalidationCache() {
+        return invalidationCache;
+    }
+
+    public void setInvalidationCache(InvalidationCache invalidationCache) {
+        if (this.invalidationCache != null) {
+            this.invalidationCache.unregister();
+        }
+
+        this.invalidationCache = invalidationCache;
+
+        if (invalidationCache != null) {
+            invalidationCache.register();
         }
-        return "Script error (check console)";
     }
 
     public String getScript() {
@@ -149,6 +593,39 @@ public class JavascriptPlaceholder {
         this.scriptData = data;
     }
 
+    public void setDataLimits(int softLimit, int hardLimit) {
+        getData().setLimits(identifier, softLimit, hardLimit);
+    }
+
+    /**
+     * Shares the data of this script with the other servers through the given store.
+     */
+    public void setSharedData(SharedDataStore sharedData) {
+        this.sharedData = sharedData;
+        sharedData.attach(identifier, getData());
+    }
+
+    public boolean isShared() {
+        return sharedData != null;
+    }
+
+    /**
+     * Loads the data file, or the shared data, the first time the script accesses Data or DataVar.
+     */
+    public void loadDataLazily() {
+        getData().setLoader(sharedData == null ? this::loadData : this::loadSharedData);
+    }
+
+    /**
+     * Loads the data file, then the shared entries in the background. Requests use the local
+     * entries until the shared ones replace them, the data file is kept as a local copy which
+     * seeds the store the first time a script is shared.
+     */
+    private void loadSharedData() {
+        loadData();
+        sharedData.load(identifier);
+    }
+
     @SuppressWarnings("ResultOfMethodCallIgnored")
     public boolean loadData() {
         yaml = new YamlConfiguration();
@@ -163,28 +640,21 @@ public class JavascriptPlaceholder {
             }
         }
 
+        saveLock.lock();
         try {
             yaml.load(dataFile);
         } catch (IOException | InvalidConfigurationException e) {
             ExpansionUtils.errorLog("An error occurred while loading for " + getIdentifier(), e);
             return false;
-        }
-
-        final Set<String> keys = yaml.getKeys(true);
-
-        if (keys.size() == 0) {
-            return false;
+        } finally {
+            saveLock.unlock();
         }
 
         if (scriptData == null) {
             scriptData = new ScriptData();
-        } else {
-            scriptData.clear();
         }
 
-        keys.forEach(key -> scriptData.set(key, ExpansionUtils.ymlToJavaObj(yaml.get(key))));
-
-        if (!scriptData.isEmpty()) {
+        if (scriptData.readFrom(yaml)) {
             this.setData(scriptData);
             return true;
         }
@@ -192,25 +662,203 @@ public class JavascriptPlaceholder {
     }
 
     public void saveData() {
+        final YamlConfiguration yaml = this.yaml;
+        final Map<String, Object> values = snapshotData();
+
+        if (values != null) {
+            writeData(yaml, values);
+        }
+    }
+
+    /**
+     * Copies the entries to save, converted while the script can not change them.
+     *
+     * @return the entries by path, null values are removed from the file. Null if there is nothing to save
+     */
+    private Map<String, Object> snapshotData() {
         if (scriptData == null || scriptData.isEmpty() || yaml == null) {
-            return;
+            return null;
         }
 
-        scriptData.getData().forEach((key, value) -> yaml.set(key, ExpansionUtils.jsonToJava(value)));
+        final Map<String, Object> values = new LinkedHashMap<>();
+        scriptData.getData().forEach((key, value) -> values.put(key, ExpansionUtils.jsonToJava(value)));
+        values.putAll(scriptData.getCounters());
+        return values;
+    }
 
+    private void writeData(YamlConfiguration yaml, Map<String, Object> values) {
+        final long start = System.nanoTime();
+
+        saveLock.lock();
         try {
+            values.forEach(yaml::set);
             yaml.save(dataFile);
         } catch (IOException e) {
             ExpansionUtils.errorLog(ExpansionUtils.PREFIX + "An error occurred while saving data for " + getIdentifier(), e);
+        } finally {
+            saveLock.unlock();
+        }
+        metrics.recordSave(System.nanoTime() - start);
+    }
+
+    /**
+     * Closes the context if it was not used for the given time, the next request builds a new
+     * one. Scripts with scheduled tasks keep their context, the tasks run in it.
+     *
+     * @return true if the context was evicted
+     */
+    public boolean evictIfIdle(long idleMillis) {
+        final YamlConfiguration yaml;
+        final Map<String, Object> values;
+
+        synchronized (lock) {
+            if (context == null || scheduler.size() > 0 || System.currentTimeMillis() - lastUsed < idleMillis) {
+                return false;
+            }
+
+            // Values stored by the script belong to its context, the data is read again from its file when needed.
+            // Only copied here, the file is written without holding up requests
+            yaml = this.yaml;
+            values = snapshotData();
+            if (scriptData.isLoaded()) {
+                scriptData.clear();
+                loadDataLazily();
+            }
+            // Temp data is kept, it is not tied to the context
+            functions.clear();
+            cache.invalidateAll();
+
+            closeContext();
+            evictions.incrementAndGet();
+
+            // Taken before the script is released, a request loading the data waits for the new file
+            if (values != null) {
+                saveLock.lock();
+            }
+        }
+
+        if (values != null) {
+            try {
+                writeData(yaml, values);
+            } finally {
+                saveLock.unlock();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builds the context right away instead of on the first request, e.g. for scripts which
+     * schedule tasks from their top-level code.
+     */
+    public void preload() {
+        synchronized (lock) {
+            preloaded = true;
+            final int[] depth = EVALUATING.get();
+            depth[0]++;
+            try {
+                getContext();
+            } catch (IllegalStateException | PolyglotException ex) {
+                ExpansionUtils.errorLog("An error occurred while loading the script '" + identifier + "':\n\t" + ex.getMessage(), null);
+            } finally {
+                depth[0]--;
+            }
+        }
+    }
+
+    public boolean hasContext() {
+        return context != null;
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    private void closeContext() {
+        final Context context = this.context;
+
+        if (context == null) {
+            return;
+        }
+
+        try {
+            context.close(true);
+        } catch (IllegalStateException ex) {
+            ExpansionUtils.warnLog("Could not close the context of '" + identifier + "': " + ex.getMessage(), null);
+        }
+        this.context = null;
+    }
+
+    private void closeTaskContext() {
+        final Context taskContext = this.taskContext;
+
+        if (taskContext == null) {
+            return;
         }
+
+        try {
+            taskContext.close(true);
+        } catch (IllegalStateException ex) {
+            ExpansionUtils.warnLog("Could not close the task context of '" + identifier + "': " + ex.getMessage(), null);
+        }
+        this.taskContext = null;
     }
 
+    /**
+     * Releases everything held by this placeholder. The context is closed, cancelling a running
+     * evaluation, so its compiled code and bindings can be collected right away. The rest is
+     * torn down under the script's locks, requests, tasks and the idle eviction still running
+     * see the placeholder either whole or cleaned up.
+     */
     public void cleanup() {
-        if (this.scriptData != null) {
-            this.scriptData.clear();
-            this.scriptData = null;
+        closed = true;
+        scheduler.cancelAll();
+        setInvalidationCache(null);
+
+        synchronized (pairwiseLock) {
+            if (pairwiseCache != null) {
+                pairwiseCache.unregister();
+                pairwiseCache = null;
+            }
+        }
+
+        // Cancelled first, the locks are released as soon as the running evaluations are aborted
+        cancel(context);
+        cancel(taskContext);
+
+        synchronized (taskLock) {
+            taskFunctions.clear();
+            closeTaskContext();
+        }
+
+        synchronized (lock) {
+            functions.clear();
+            cache.invalidateAll();
+            closeContext();
+
+            if (this.scriptData != null) {
+                if (sharedData != null) {
+                    sharedData.detach(identifier, scriptData);
+                }
+                if (scriptData.isLoaded()) {
+                    this.scriptData.clear();
+                }
+                this.scriptData = null;
+            }
+            this.yaml = null;
+        }
+    }
+
+    private void cancel(Context context) {
+        if (context == null) {
+            return;
+        }
+
+        try {
+            context.close(true);
+        } catch (IllegalStateException ignored) {
+            // Closed again under the lock, failures are reported there
         }
-        this.yaml = null;
     }
 
 }
@@ -0,0 +1,137 @@
+package com.extendedclip.papi.expansion.javascript;
+
+import com.extendedclip.papi.expansion.javascript.parser.JavascriptParser;
+import com.extendedclip.papi.expansion.javascript.parser.UtilityParser;
+import me.clip.placeholderapi.PlaceholderAPI;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Context used by '/jsexpansion parse'. It is created once on the shared engine and reused
+ * between invocations, it is only rebuilt after an evaluation ran out of time.
+ */
+public class ReplContext {
+
+    private static final String SOURCE_NAME = "parse-command";
+
+    private final JavascriptExpansion expansion;
+    private final long timeout;
+    private final ScheduledExecutorService watchdog;
+    private final ScriptData scriptData;
+    private Context context;
+
+    public ReplContext(JavascriptExpansion expansion, long timeout) {
+        this.expansion = expansion;
+        this.timeout = timeout;
+        this.scriptData = new ScriptData();
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "Javascript-Expansion parse watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public synchronized Result evaluate(OfflinePlayer player, String code) {
+        final Context context = getContext();
+        final Value binding = context.getBindings("js");
+
+        // Always bound, the context is reused and must not keep the previous caller
+        final Player online = player != null && player.isOnline() ? player.getPlayer() : null;
+        binding.putMember("BukkitPlayer", online);
+        binding.putMember("Player", online);
+
+        binding.putMember("OfflinePlayer", player);
+        binding.putMember("Parser", new JavascriptParser(player));
+        // Snippets are pasted from scripts, the command passes them no arguments
+        binding.putMember("args", new String[0]);
+
+        final ScheduledFuture<?> cancel = watchdog.schedule(() -> context.close(true), timeout, TimeUnit.MILLISECONDS);
+        final long start = System.nanoTime();
+
+        try {
+            final Value value = context.eval(Source.create("js", code));
+            final long elapsed = System.nanoTime() - start;
+            final Object result = ExpansionUtils.jsonToJava(value);
+
+            return new Result(result != null ? PlaceholderAPI.setPlaceholders(player, result.toString()) : "", elapsed, false);
+        } catch (PolyglotException ex) {
+            final long elapsed = System.nanoTime() - start;
+
+            if (ex.isCancelled()) {
+                return new Result("Evaluation cancelled after " + timeout + "ms", elapsed, true);
+            }
+            return new Result(ex.getMessage(), elapsed, true);
+        } catch (IllegalStateException ex) {
+            return new Result(ex.getMessage(), System.nanoTime() - start, true);
+        } finally {
+            // The watchdog already closed the context (or is about to), start over next time
+            if (!cancel.cancel(false)) {
+                this.context = null;
+            }
+        }
+    }
+
+    private Context getContext() {
+        if (context == null) {
+            context = expansion.getEngineManager().createContext();
+
+            final Value binding = context.getBindings("js");
+            binding.putMember("Data", scriptData);
+            binding.putMember("DataVar", scriptData.getData());
+            binding.putMember("BukkitServer", Bukkit.getServer());
+            binding.putMember("Expansion", expansion);
+            binding.putMember("PlaceholderAPI", PlaceholderAPI.class);
+            binding.putMember("UtilityParser", UtilityParser.getInstance());
+        }
+        return context;
+    }
+
+    public synchronized void close() {
+        watchdog.shutdownNow();
+
+        if (context != null) {
+            try {
+                context.close(true);
+            } catch (IllegalStateException ignored) {
+            }
+            context = null;
+        }
+        scriptData.clear();
+        scriptData.clearTemp();
+    }
+
+    public static class Result {
+
+        private final String output;
+        private final long nanos;
+        private final boolean error;
+
+        private Result(String output, long nanos, boolean error) {
+            this.output = output;
+            this.nanos = nanos;
+            this.error = error;
+        }
+
+        public String getOutput() {
+            return output;
+        }
+
+        public double getMillis() {
+            return nanos / 1_000_000.0;
+        }
+
+        public boolean isError() {
+            return error;
+        }
+    }
+}
@@ -20,54 +20,620 @@
  */
 package com.extendedclip.papi.expansion.javascript;
 
+import com.extendedclip.papi.expansion.javascript.data.Replication;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ScriptData {
 
+    private static final int MAX_REMOTE_UPDATES = 10000;
+
     private final Map<String, Object> tempMap;
     private final Map<String, Object> map;
+    // Numeric entries updated through incr, a key is either a counter or a map entry
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    // Raw bits of the doubles updated through incrDouble
+    private final Map<String, AtomicLong> doubleCounters = new ConcurrentHashMap<>();
+    // Paths of the sections read from the data file, only their leaf paths are entries
+    private final Set<String> sections = ConcurrentHashMap.newKeySet();
+    private String owner;
+    private int softLimit;
+    private int hardLimit;
+    private boolean softWarned;
+    private boolean hardWarned;
+    private Runnable loader;
+    private volatile boolean loaded = true;
+    private volatile Replication replication;
+    // Changes made by other servers, applied by the thread using the data
+    private final Queue<Runnable> remoteUpdates = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedUpdates = new AtomicInteger();
 
     public ScriptData() {
         this(null);
     }
 
     public ScriptData(Map<String, Object> data) {
-        this.tempMap = new HashMap<>();
-        this.map = data == null ? new HashMap<>() : data;
+        // Synchronized, requests and the script's async tasks use the data from different threads
+        this.tempMap = Collections.synchronizedMap(new HashMap<>());
+        this.map = Collections.synchronizedMap(data == null ? new HashMap<>() : data);
 
     }
 
+    /**
+     * @return the entries, loaded first if they were not yet
+     */
     public Map<String, Object> getData() {
+        ensureLoaded();
+        return map;
+    }
+
+    /**
+     * @return the entries as they are, without loading them, e.g. for statistics
+     */
+    public Map<String, Object> peekData() {
         return map;
     }
 
+    /**
+     * Defers loading the entries until they are accessed through one of the script methods.
+     */
+    public synchronized void setLoader(Runnable loader) {
+        this.loader = loader;
+        this.loaded = false;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public void ensureLoaded() {
+        if (!loaded) {
+            load();
+        }
+
+        if (!remoteUpdates.isEmpty()) {
+            // One thread at a time, changes are applied in the order they were read
+            synchronized (remoteUpdates) {
+                Runnable update;
+                while ((update = remoteUpdates.poll()) != null) {
+                    queuedUpdates.decrementAndGet();
+                    update.run();
+                }
+            }
+        }
+    }
+
+    private synchronized void load() {
+        final Runnable loader = this.loader;
+
+        // Null while the loader itself runs on this thread
+        if (loaded || loader == null) {
+            return;
+        }
+
+        this.loader = null;
+        try {
+            loader.run();
+        } finally {
+            loaded = true;
+        }
+    }
+
+    /**
+     * Replaces the entries with the values of a data file. Only leaf paths are kept, they are the
+     * keys scripts use and the ones written back on save. Written directly, stored data is not
+     * subject to the entry limits.
+     *
+     * @return false if the file has no entries
+     */
+    public boolean readFrom(ConfigurationSection yaml) {
+        // Every path in one pass, sections included
+        final Map<String, Object> values = yaml.getValues(true);
+
+        if (values.isEmpty()) {
+            return false;
+        }
+
+        clear();
+        values.forEach((key, value) -> {
+            if (value instanceof ConfigurationSection) {
+                sections.add(key);
+            } else {
+                map.put(key, value);
+            }
+        });
+        return !isEmpty();
+    }
+
+    /**
+     * Sends the changes scripts make to the given replication, null to keep them local.
+     */
+    public void setReplication(Replication replication) {
+        this.replication = replication;
+    }
+
+    /**
+     * Applies a value changed by another server, null if it was removed. Ignored while the data
+     * is not loaded, loading reads the latest values.
+     */
+    public void applyRemote(String key, Object value) {
+        queueRemote(() -> setRemote(key, value));
+    }
+
+    /**
+     * Replaces the entries with the ones read from the shared store. Keys which are not stored
+     * are removed, except the given ones which were changed on this server since.
+     */
+    public void replaceRemote(Map<String, Object> values, Set<String> kept) {
+        queueRemote(() -> {
+            synchronized (counters) {
+                final Set<String> keys = new HashSet<>(counters.keySet());
+                keys.addAll(doubleCounters.keySet());
+                synchronized (map) {
+                    keys.addAll(map.keySet());
+                }
+                keys.removeAll(values.keySet());
+                keys.removeAll(kept);
+
+                // Set to null, the key is removed from the data file on save
+                for (String key : keys) {
+                    counters.remove(key);
+                    doubleCounters.remove(key);
+                    if (map.get(key) != null) {
+                        map.put(key, null);
+                    }
+                }
+                sections.clear();
+            }
+            values.forEach(this::setRemote);
+        });
+    }
+
+    private void setRemote(String key, Object value) {
+        synchronized (counters) {
+            if (value instanceof Number) {
+                final AtomicLong counter = counters.get(key);
+
+                if (counter != null) {
+                    counter.set(((Number) value).longValue());
+                    return;
+                }
+
+                final AtomicLong doubleCounter = doubleCounters.get(key);
+
+                if (doubleCounter != null) {
+                    doubleCounter.set(Double.doubleToRawLongBits(((Number) value).doubleValue()));
+                    return;
+                }
+            }
+
+            counters.remove(key);
+            doubleCounters.remove(key);
+            map.put(key, value);
+        }
+    }
+
+    private void queueRemote(Runnable update) {
+        // A loader is only set while waiting for the first access
+        if (!loaded && loader != null) {
+            return;
+        }
+
+        if (queuedUpdates.incrementAndGet() > MAX_REMOTE_UPDATES) {
+            // Not accessed for a long time, reading everything again is cheaper than replaying
+            remoteUpdates.clear();
+            queuedUpdates.set(0);
+
+            final Replication replication = this.replication;
+            if (replication != null) {
+                replication.reload();
+            }
+            return;
+        }
+        remoteUpdates.add(update);
+    }
+
+    /**
+     * @return a copy of the entries and counters with a value, e.g. to copy them to a shared store
+     */
+    public Map<String, Object> snapshot() {
+        final Map<String, Object> values = new HashMap<>();
+
+        synchronized (map) {
+            map.forEach((key, value) -> {
+                if (value != null) {
+                    values.put(key, value);
+                }
+            });
+        }
+        values.putAll(getCounters());
+        return values;
+    }
+
+    /**
+     * Empties the data. Only local, shared data is left as it is in the store.
+     */
     public void clear() {
+        ensureLoaded();
         map.clear();
+        counters.clear();
+        doubleCounters.clear();
+        sections.clear();
     }
 
     public boolean exists(String key) {
-        return map.get(key) != null;
+        ensureLoaded();
+        return map.get(key) != null || counters.containsKey(key) || doubleCounters.containsKey(key) || sections.contains(key);
     }
 
     public Object get(String key) {
-        return map.get(key);
+        ensureLoaded();
+
+        final AtomicLong counter = counters.get(key);
+
+        if (counter != null) {
+            return counter.get();
+        }
+
+        final AtomicLong doubleCounter = doubleCounters.get(key);
+
+        if (doubleCounter != null) {
+            return Double.longBitsToDouble(doubleCounter.get());
+        }
+
+        final Object value = map.get(key);
+        return value == null && sections.contains(key) ? getSection(key) : value;
+    }
+
+    /**
+     * Rebuilds a value stored as a map, e.g. with Data.set("a", {...}). The file keeps it as a
+     * section and only its leaf paths are loaded, so its entries are collected by their paths.
+     *
+     * @return the entries below the path, nested the way they were stored
+     */
+    private Map<String, Object> getSection(String path) {
+        final String prefix = path + '.';
+        final Map<String, Object> section = new LinkedHashMap<>();
+
+        synchronized (map) {
+            map.forEach((key, value) -> {
+                if (value != null && key.startsWith(prefix)) {
+                    putNested(section, key.substring(prefix.length()), value);
+                }
+            });
+        }
+        counters.forEach((key, counter) -> {
+            if (key.startsWith(prefix)) {
+                putNested(section, key.substring(prefix.length()), counter.get());
+            }
+        });
+        doubleCounters.forEach((key, counter) -> {
+            if (key.startsWith(prefix)) {
+                putNested(section, key.substring(prefix.length()), Double.longBitsToDouble(counter.get()));
+            }
+        });
+        return section;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void putNested(Map<String, Object> section, String path, Object value) {
+        final String[] keys = path.split("\\.");
+        Map<String, Object> parent = section;
+
+        for (int i = 0; i < keys.length - 1; i++) {
+            final Object child = parent.get(keys[i]);
+
+            if (child instanceof Map) {
+                parent = (Map<String, Object>) child;
+            } else {
+                final Map<String, Object> created = new LinkedHashMap<>();
+                parent.put(keys[i], created);
+                parent = created;
+            }
+        }
+        parent.put(keys[keys.length - 1], value);
+    }
+
+    /**
+     * Forgets a loaded section replaced by a value, its leaf entries would be written over the
+     * new value on save.
+     */
+    private void replaceSection(String key) {
+        if (sections.isEmpty() || !sections.remove(key)) {
+            return;
+        }
+
+        final String prefix = key + '.';
+        map.keySet().removeIf(path -> path.startsWith(prefix));
+        counters.keySet().removeIf(path -> path.startsWith(prefix));
+        doubleCounters.keySet().removeIf(path -> path.startsWith(prefix));
+        sections.removeIf(path -> path.startsWith(prefix));
     }
 
     public void remove(String key) {
-        map.put(key, null);
+        ensureLoaded();
+
+        // Locked like incr, a key is never left both a counter and an entry
+        synchronized (counters) {
+            replaceSection(key);
+            counters.remove(key);
+            doubleCounters.remove(key);
+            map.put(key, null);
+        }
+
+        final Replication replication = this.replication;
+        if (replication != null) {
+            replication.remove(key);
+        }
     }
 
     public void set(String key, Object value) {
-        map.put(key, ExpansionUtils.jsonToJava(value));
+        ensureLoaded();
+
+        if (!canSet(key)) {
+            return;
+        }
+
+        final Object converted = ExpansionUtils.jsonToJava(value);
+        synchronized (counters) {
+            replaceSection(key);
+            counters.remove(key);
+            doubleCounters.remove(key);
+            map.put(key, converted);
+        }
+
+        final Replication replication = this.replication;
+        if (replication != null) {
+            replication.set(key, value);
+        }
     }
 
     public void setIfNull(String key, Object value) {
-        map.putIfAbsent(key, ExpansionUtils.jsonToJava(value));
+        ensureLoaded();
+
+        if (!canSet(key)) {
+            return;
+        }
+
+        final Object converted = ExpansionUtils.jsonToJava(value);
+        synchronized (counters) {
+            if (counters.containsKey(key) || doubleCounters.containsKey(key) || map.get(key) != null) {
+                return;
+            }
+            map.put(key, converted);
+        }
+
+        final Replication replication = this.replication;
+        if (replication != null) {
+            replication.set(key, value);
+        }
+    }
+
+    public long incr(String key) {
+        return incr(key, 1);
+    }
+
+    /**
+     * Atomically adds to a whole number counter, starting from the stored value of the key or 0.
+     * Counters are kept as primitives and saved as numbers, unlike values stored with set. They
+     * are not entries of the map scripts see as DataVar, Data.get and Data.getLong read them.
+     *
+     * @return the new value, or the unchanged value if the key could not be created
+     */
+    public long incr(String key, long delta) {
+        ensureLoaded();
+
+        final Replication replication = this.replication;
+        AtomicLong counter = counters.get(key);
+
+        if (counter == null) {
+            synchronized (counters) {
+                counter = counters.get(key);
+
+                if (counter == null) {
+                    if (!canSet(key)) {
+                        return 0;
+                    }
+
+                    final Object previous = map.get(key);
+                    // The store can only increment whole numbers, anything else is written as one first
+                    final boolean rewrite = doubleCounters.containsKey(key) || (previous != null && !(previous instanceof Long || previous instanceof Integer));
+                    counter = new AtomicLong((long) takeNumber(key));
+                    counters.put(key, counter);
+
+                    if (replication != null && rewrite) {
+                        replication.set(key, counter.get());
+                    }
+                }
+            }
+        }
+
+        final long value = counter.addAndGet(delta);
+
+        if (replication != null) {
+            replication.increment(key, delta);
+        }
+        return value;
+    }
+
+    public double incrDouble(String key, double delta) {
+        ensureLoaded();
+
+        final Replication replication = this.replication;
+        AtomicLong counter = doubleCounters.get(key);
+
+        if (counter == null) {
+            synchronized (counters) {
+                counter = doubleCounters.get(key);
+
+                if (counter == null) {
+                    if (!canSet(key)) {
+                        return 0;
+                    }
+
+                    final Object previous = map.get(key);
+                    final boolean rewrite = previous != null && !(previous instanceof Number);
+                    counter = new AtomicLong(Double.doubleToRawLongBits(takeNumber(key)));
+                    doubleCounters.put(key, counter);
+
+                    if (replication != null && rewrite) {
+                        replication.set(key, Double.longBitsToDouble(counter.get()));
+                    }
+                }
+            }
+        }
+
+        while (true) {
+            final long bits = counter.get();
+            final double value = Double.longBitsToDouble(bits) + delta;
+
+            if (counter.compareAndSet(bits, Double.doubleToRawLongBits(value))) {
+                if (replication != null) {
+                    replication.increment(key, delta);
+                }
+                return value;
+            }
+        }
+    }
+
+    /**
+     * @return the key as a whole number, 0 if it is not set or not a number
+     */
+    public long getLong(String key) {
+        ensureLoaded();
+
+        final AtomicLong counter = counters.get(key);
+
+        if (counter != null) {
+            return counter.get();
+        }
+        return (long) getDouble(key);
+    }
+
+    /**
+     * @return the key as a number, 0 if it is not set or not a number
+     */
+    public double getDouble(String key) {
+        ensureLoaded();
+
+        final AtomicLong counter = counters.get(key);
+
+        if (counter != null) {
+            return counter.get();
+        }
+
+        final AtomicLong doubleCounter = doubleCounters.get(key);
+
+        if (doubleCounter != null) {
+            return Double.longBitsToDouble(doubleCounter.get());
+        }
+        return toNumber(map.get(key));
+    }
+
+    /**
+     * @return the counters with their current value, as they should be saved
+     */
+    public Map<String, Number> getCounters() {
+        final Map<String, Number> values = new HashMap<>();
+        counters.forEach((key, counter) -> values.put(key, counter.get()));
+        doubleCounters.forEach((key, counter) -> values.put(key, Double.longBitsToDouble(counter.get())));
+        return values;
+    }
+
+    /**
+     * Takes the current value of a key which becomes a counter, e.g. a string written with set by
+     * an older script. Called with the counters locked, a key becomes a counter only once.
+     */
+    private double takeNumber(String key) {
+        final AtomicLong counter = counters.remove(key);
+
+        if (counter != null) {
+            return counter.get();
+        }
+
+        final AtomicLong doubleCounter = doubleCounters.remove(key);
+
+        if (doubleCounter != null) {
+            return Double.longBitsToDouble(doubleCounter.get());
+        }
+
+        final double value = toNumber(map.remove(key));
+        return Double.isNaN(value) || Double.isInfinite(value) ? 0 : value;
+    }
+
+    private static double toNumber(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+
+        if (value != null) {
+            try {
+                return Double.parseDouble(value.toString().trim());
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Limits the amount of entries scripts can store, 0 disables a limit. Past the soft limit a warning is logged
+     * once, past the hard limit new keys are rejected. Existing keys can always be updated.
+     */
+    public void setLimits(String owner, int softLimit, int hardLimit) {
+        this.owner = owner;
+        this.softLimit = softLimit;
+        this.hardLimit = hardLimit;
+        this.softWarned = false;
+        this.hardWarned = false;
+    }
+
+    public int getSoftLimit() {
+        return softLimit;
+    }
+
+    public int getHardLimit() {
+        return hardLimit;
+    }
+
+    private boolean canSet(String key) {
+        if ((softLimit <= 0 && hardLimit <= 0) || exists(key)) {
+            return true;
+        }
+
+        final int size = size();
+
+        if (hardLimit > 0 && size >= hardLimit) {
+            if (!hardWarned) {
+                hardWarned = true;
+                ExpansionUtils.warnLog("Data of '" + owner + "' reached its hard limit of " + hardLimit + " entries, new keys are rejected", null);
+            }
+            return false;
+        }
+
+        if (softLimit > 0 && size >= softLimit && !softWarned) {
+            softWarned = true;
+            ExpansionUtils.warnLog("Data of '" + owner + "' exceeded its soft limit of " + softLimit + " entries", null);
+        }
+        return true;
+    }
+
+    public int size() {
+        return map.size() + counters.size() + doubleCounters.size();
     }
 
     public boolean isEmpty() {
-        return map.isEmpty();
+        return map.isEmpty() && counters.isEmpty() && doubleCounters.isEmpty();
     }
 
     public boolean isTempEmpty() {
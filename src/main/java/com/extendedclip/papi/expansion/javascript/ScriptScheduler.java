@@ -0,0 +1,122 @@
+package com.extendedclip.papi.expansion.javascript;
+
+import me.clip.placeholderapi.PlaceholderAPIPlugin;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.SourceSection;
+import org.graalvm.polyglot.Value;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Periodic tasks registered by a script, bound as 'Scheduler'. Work which is the same for every
+ * player can run once per period and leave its result in temp data for requests to read:
+ * <pre>
+ * Scheduler.every("top", 100, function () { Data.setTemp("top", computeTop()); });
+ * </pre>
+ * A task is only scheduled the first time it is registered, by name or, without one, by the
+ * place the function is defined at. Scripts without 'functions' run their top-level code on every
+ * request and keep a single task that way. Tasks are cancelled when the script is unloaded.
+ * <p>
+ * Async tasks run in a context of their own, requests never wait for them. They only see the
+ * bindings such as Data and Cache, not the variables and functions of the script, and hand
+ * their results to requests through Data or Cache. Both keep plain values, objects and arrays
+ * are copied into maps and lists, functions can not be handed over.
+ */
+public class ScriptScheduler {
+
+    private final JavascriptPlaceholder placeholder;
+    private final Map<Integer, BukkitTask> tasks = new ConcurrentHashMap<>();
+    private final Map<String, Integer> names = new ConcurrentHashMap<>();
+
+    public ScriptScheduler(JavascriptPlaceholder placeholder) {
+        this.placeholder = placeholder;
+    }
+
+    /**
+     * Runs the function on the main thread every given amount of ticks.
+     *
+     * @return the task id, to be used with {@link #cancel(int)}
+     */
+    public int every(long ticks, Value function) {
+        return every(site(function), ticks, function);
+    }
+
+    /**
+     * Runs the function off the main thread every given amount of ticks, it must not use the Bukkit API.
+     *
+     * @return the task id, to be used with {@link #cancel(int)}
+     */
+    public int everyAsync(long ticks, Value function) {
+        return everyAsync(site(function), ticks, function);
+    }
+
+    public int every(String name, long ticks, Value function) {
+        final long period = Math.max(1, ticks);
+        return names.computeIfAbsent(name, key -> track(Bukkit.getScheduler().runTaskTimer(PlaceholderAPIPlugin.getInstance(),
+                () -> placeholder.runTask(function), period, period)));
+    }
+
+    public int everyAsync(String name, long ticks, Value function) {
+        final long period = Math.max(1, ticks);
+        return names.computeIfAbsent(name, key -> {
+            // Compiled again in the task context, a function can only run in the context it was created in
+            final Source source = Source.newBuilder("js", "(" + location(function).getCharacters() + ")", placeholder.getIdentifier() + "-task").buildLiteral();
+            return track(Bukkit.getScheduler().runTaskTimerAsynchronously(PlaceholderAPIPlugin.getInstance(),
+                    () -> placeholder.runAsyncTask(source), period, period));
+        });
+    }
+
+    public void cancel(String name) {
+        final Integer id = names.remove(name);
+
+        if (id != null) {
+            cancel(id);
+        }
+    }
+
+    public void cancel(int id) {
+        final BukkitTask task = tasks.remove(id);
+        // Registering the same name or function again schedules a new task
+        names.values().remove(id);
+
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
+    public void cancelAll() {
+        tasks.values().forEach(BukkitTask::cancel);
+        tasks.clear();
+        names.clear();
+    }
+
+    public int size() {
+        return tasks.size();
+    }
+
+    private int track(BukkitTask task) {
+        tasks.put(task.getTaskId(), task);
+        return task.getTaskId();
+    }
+
+    /**
+     * @return the key of an unnamed task, the place its function is defined at
+     */
+    private static String site(Value function) {
+        final SourceSection location = location(function);
+        // Prefixed with a NUL character, unnamed tasks never collide with named ones
+        return "\0" + location.getSource().getName() + ':' + location.getCharIndex();
+    }
+
+    private static SourceSection location(Value function) {
+        final SourceSection location = function == null || !function.canExecute() ? null : function.getSourceLocation();
+
+        if (location == null || !location.isAvailable()) {
+            throw new IllegalArgumentException("Scheduler tasks must be functions defined in the script");
+        }
+        return location;
+    }
+}
@@ -0,0 +1,153 @@
+package com.extendedclip.papi.expansion.javascript;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Limits the time scripts may spend on the main thread per tick. Once the budget of the current
+ * tick is spent, a request is answered with the last value computed for it and the computation
+ * is deferred to the next tick, where it runs before any new request is counted.
+ * Requests from other threads are never deferred, their results only refresh the last values.
+ */
+public class TickBudget {
+
+    private static final int MAX_VALUES = 10000;
+    private static final int MAX_DEFERRED = 1024;
+
+    private final long budgetNanos;
+    private final Map<String, String> lastValues;
+    private final LongAdder staleServed = new LongAdder();
+    // Bumped by clear(), computations deferred before are dropped
+    private final AtomicInteger generation = new AtomicInteger();
+    private volatile Plugin plugin;
+    private BukkitTask task;
+
+    // Only touched by the main thread
+    private final Map<String, Supplier<String>> deferred = new LinkedHashMap<>();
+    private int deferredGeneration;
+    private long spentNanos;
+
+    public TickBudget(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+        this.lastValues = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > MAX_VALUES;
+            }
+        });
+    }
+
+    public boolean isEnabled() {
+        return budgetNanos > 0;
+    }
+
+    public void start(Plugin plugin) {
+        if (isEnabled() && task == null) {
+            this.plugin = plugin;
+            task = Bukkit.getScheduler().runTaskTimer(plugin, this::tick, 1, 1);
+        }
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        clear();
+    }
+
+    /**
+     * Forgets every last value and deferred computation, they belong to scripts which are unloaded.
+     * Called off the main thread, e.g. by a reload after a download, the deferred computations are
+     * cleared on the next tick and none of them runs meanwhile.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        lastValues.clear();
+
+        if (Bukkit.isPrimaryThread()) {
+            clearDeferred();
+        } else if (plugin != null && plugin.isEnabled()) {
+            Bukkit.getScheduler().runTask(plugin, this::clearDeferred);
+        }
+    }
+
+    private void clearDeferred() {
+        deferred.clear();
+        deferredGeneration = generation.get();
+    }
+
+    /**
+     * @return the last value of the request if the budget of this tick is spent, null if it
+     * should be computed now. The computation is queued for the next tick when a value is returned.
+     */
+    public String getStale(String key, Supplier<String> computation) {
+        if (!isEnabled() || spentNanos < budgetNanos || !Bukkit.isPrimaryThread()) {
+            return null;
+        }
+
+        final String value = lastValues.get(key);
+
+        // Nothing to fall back to, the request has to be computed over budget
+        if (value == null) {
+            return null;
+        }
+
+        if (deferredGeneration != generation.get()) {
+            clearDeferred();
+        }
+
+        if (deferred.size() < MAX_DEFERRED || deferred.containsKey(key)) {
+            deferred.put(key, computation);
+        }
+        staleServed.increment();
+        return value;
+    }
+
+    /**
+     * Computes the request, counting the time against the budget when on the main thread.
+     */
+    public String compute(String key, Supplier<String> computation) {
+        final boolean primary = Bukkit.isPrimaryThread();
+        final int computed = generation.get();
+        final long start = System.nanoTime();
+        final String value = computation.get();
+
+        if (primary) {
+            spentNanos += System.nanoTime() - start;
+        }
+
+        // Not kept if the scripts were unloaded meanwhile, the key may belong to a reloaded one
+        if (value != null && computed == generation.get()) {
+            lastValues.put(key, value);
+        }
+        return value;
+    }
+
+    public long getStaleServed() {
+        return staleServed.sum();
+    }
+
+    private void tick() {
+        spentNanos = 0;
+
+        if (deferredGeneration != generation.get()) {
+            clearDeferred();
+        }
+
+        // Deferred requests are refreshed first, as far as the new budget allows
+        final Iterator<Map.Entry<String, Supplier<String>>> iterator = deferred.entrySet().iterator();
+
+        while (iterator.hasNext() && spentNanos < budgetNanos) {
+            final Map.Entry<String, Supplier<String>> entry = iterator.next();
+            iterator.remove();
+            compute(entry.getKey(), entry.getValue());
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.extendedclip.papi.expansion.javascript.argument;
+
+public class Argument {
+
+    private final String name;
+    private final ArgumentType type;
+    private final Object defaultValue;
+    private final boolean required;
+
+    public Argument(String name, ArgumentType type, Object defaultValue, boolean required) {
+        this.name = name;
+        this.type = type;
+        this.defaultValue = defaultValue;
+        this.required = required;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ArgumentType getType() {
+        return type;
+    }
+
+    public Object getDefaultValue() {
+        return defaultValue;
+    }
+
+    public boolean isRequired() {
+        return required;
+    }
+}
@@ -0,0 +1,173 @@
+package com.extendedclip.papi.expansion.javascript.argument;
+
+import com.extendedclip.papi.expansion.javascript.ExpansionUtils;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.*;
+import java.util.function.UnaryOperator;
+import java.util.regex.Pattern;
+
+/**
+ * Argument declaration of a script, parsed from:
+ * <pre>
+ * hasitem:
+ *   file: has_item.js
+ *   named-arguments: true
+ *   arguments:
+ *     mat:
+ *       type: string
+ *     amt:
+ *       type: int
+ *       default: 1
+ *     lore:
+ *       type: list
+ *       required: false
+ * </pre>
+ * Parse results are cached per raw argument string, so repeated requests skip both splitting and type conversion.
+ */
+public class ArgumentSchema {
+
+    private static final int CACHE_SIZE = 256;
+
+    private final List<Argument> arguments;
+    private final Map<String, Argument> byName;
+    private final boolean named;
+    private final Pattern splitter;
+    private final Map<String, ParsedArguments> cache;
+
+    public ArgumentSchema(List<Argument> arguments, boolean named, Pattern splitter) {
+        this.arguments = arguments;
+        this.named = named;
+        this.splitter = splitter;
+        this.byName = new HashMap<>();
+        arguments.forEach(argument -> byName.put(argument.getName().toLowerCase(), argument));
+
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<String, ParsedArguments>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ParsedArguments> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        });
+    }
+
+    public static ArgumentSchema fromConfig(String identifier, ConfigurationSection section, boolean named, Pattern splitter) {
+        if (section == null) {
+            return null;
+        }
+
+        final List<Argument> arguments = new ArrayList<>();
+
+        for (String name : section.getKeys(false)) {
+            final ArgumentType type = ArgumentType.getType(section.getString(name + ".type"));
+
+            if (type == null) {
+                ExpansionUtils.warnLog("Unknown type '" + section.getString(name + ".type") + "' for argument '" + name + "' of " + identifier + ", using string", null);
+                final String defaultValue = section.getString(name + ".default");
+                arguments.add(new Argument(name, ArgumentType.STRING, defaultValue, section.getBoolean(name + ".required", defaultValue == null)));
+                continue;
+            }
+
+            Object defaultValue = null;
+            final String raw = section.getString(name + ".default");
+
+            if (raw != null) {
+                try {
+                    defaultValue = type.parse(raw);
+                } catch (IllegalArgumentException ex) {
+                    ExpansionUtils.warnLog("Default value '" + raw + "' of argument '" + name + "' of " + identifier + " is not a valid " + type.name().toLowerCase(), null);
+                }
+            }
+
+            arguments.add(new Argument(name, type, defaultValue, section.getBoolean(name + ".required", defaultValue == null)));
+        }
+
+        return arguments.isEmpty() ? null : new ArgumentSchema(arguments, named, splitter);
+    }
+
+    public List<Argument> getArguments() {
+        return arguments;
+    }
+
+    /**
+     * Parses arguments which contain no bracket placeholders, these are cached.
+     */
+    public ParsedArguments parse(String params) {
+        ParsedArguments parsed = cache.get(params);
+
+        if (parsed == null) {
+            parsed = parseUncached(params, UnaryOperator.identity());
+            cache.put(params, parsed);
+        }
+        return parsed;
+    }
+
+    /**
+     * Parses arguments without caching them. The arguments are split first and each value is
+     * then passed through the expander, e.g. to set bracket placeholders, so an expanded value
+     * containing the separator stays one argument.
+     */
+    public ParsedArguments parseUncached(String params, UnaryOperator<String> expander) {
+        final String[] raw = params.isEmpty() ? new String[0] : splitter.split(params);
+        final Map<String, Object> values = new LinkedHashMap<>();
+
+        for (int i = 0; i < raw.length; i++) {
+            final int separator = named ? raw[i].indexOf(':') : -1;
+
+            // Only the value of a named argument is expanded, its name is looked up as written
+            raw[i] = separator == -1 ?
+                    expander.apply(raw[i]) :
+                    raw[i].substring(0, separator + 1) + expander.apply(raw[i].substring(separator + 1));
+        }
+
+        for (int i = 0; i < raw.length; i++) {
+            final String piece = raw[i];
+            final Argument argument;
+            final String value;
+
+            if (named) {
+                final int separator = piece.indexOf(':');
+
+                if (separator == -1) {
+                    return ParsedArguments.error(raw, "Invalid argument '" + piece.trim() + "', expected <name>: <value>");
+                }
+
+                final String name = piece.substring(0, separator).trim();
+                argument = byName.get(name.toLowerCase());
+                value = piece.substring(separator + 1).trim();
+
+                if (argument == null) {
+                    values.put(name, value);
+                    continue;
+                }
+            } else {
+                if (i >= arguments.size()) {
+                    break;
+                }
+                argument = arguments.get(i);
+                value = piece;
+            }
+
+            try {
+                values.put(argument.getName(), argument.getType().parse(value));
+            } catch (IllegalArgumentException ex) {
+                return ParsedArguments.error(raw, "Invalid argument '" + argument.getName() + "', expected " + argument.getType().name().toLowerCase() + " but got '" + value + "'");
+            }
+        }
+
+        for (Argument argument : arguments) {
+            if (values.containsKey(argument.getName())) {
+                continue;
+            }
+
+            if (argument.isRequired()) {
+                return ParsedArguments.error(raw, "Missing argument '" + argument.getName() + "'");
+            }
+
+            if (argument.getDefaultValue() != null) {
+                values.put(argument.getName(), argument.getDefaultValue());
+            }
+        }
+
+        return ParsedArguments.of(raw, values);
+    }
+}
@@ -0,0 +1,69 @@
+package com.extendedclip.papi.expansion.javascript.argument;
+
+import java.util.regex.Pattern;
+
+public enum ArgumentType {
+
+    STRING {
+        @Override
+        public Object parse(String value) {
+            return value;
+        }
+    },
+    INT {
+        @Override
+        public Object parse(String value) {
+            return Integer.parseInt(value);
+        }
+    },
+    LONG {
+        @Override
+        public Object parse(String value) {
+            return Long.parseLong(value);
+        }
+    },
+    DOUBLE {
+        @Override
+        public Object parse(String value) {
+            return Double.parseDouble(value);
+        }
+    },
+    BOOLEAN {
+        @Override
+        public Object parse(String value) {
+            if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("yes")) {
+                return true;
+            }
+            if (value.equalsIgnoreCase("false") || value.equalsIgnoreCase("no")) {
+                return false;
+            }
+            throw new IllegalArgumentException(value);
+        }
+    },
+    LIST {
+        private final Pattern separator = Pattern.compile("\\|");
+
+        @Override
+        public Object parse(String value) {
+            return separator.split(value);
+        }
+    };
+
+    /**
+     * @throws IllegalArgumentException if the value does not match this type
+     */
+    public abstract Object parse(String value);
+
+    public static ArgumentType getType(String name) {
+        if (name == null) {
+            return STRING;
+        }
+
+        for (ArgumentType type : values()) {
+            if (type.name().equalsIgnoreCase(name)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
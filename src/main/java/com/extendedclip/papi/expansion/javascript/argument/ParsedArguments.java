@@ -0,0 +1,52 @@
+package com.extendedclip.papi.expansion.javascript.argument;
+
+import org.graalvm.polyglot.proxy.ProxyObject;
+
+import java.util.Collections;
+import java.util.Map;
+
+public class ParsedArguments {
+
+    private final String[] raw;
+    private final Map<String, Object> values;
+    private final ProxyObject proxy;
+    private final String error;
+
+    private ParsedArguments(String[] raw, Map<String, Object> values, String error) {
+        this.raw = raw;
+        this.values = values;
+        this.proxy = values == null ? null : ProxyObject.fromMap(values);
+        this.error = error;
+    }
+
+    public static ParsedArguments of(String[] raw, Map<String, Object> values) {
+        return new ParsedArguments(raw, Collections.unmodifiableMap(values), null);
+    }
+
+    public static ParsedArguments error(String[] raw, String error) {
+        return new ParsedArguments(raw, null, error);
+    }
+
+    public String[] getRaw() {
+        return raw;
+    }
+
+    public Map<String, Object> getValues() {
+        return values;
+    }
+
+    /**
+     * @return the typed values as a JS object, e.g. Args.amount
+     */
+    public ProxyObject getProxy() {
+        return proxy;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public boolean isValid() {
+        return error == null;
+    }
+}
@@ -0,0 +1,252 @@
+package com.extendedclip.papi.expansion.javascript.cache;
+
+import com.extendedclip.papi.expansion.javascript.ExpansionUtils;
+import me.clip.placeholderapi.PlaceholderAPIPlugin;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.HumanEntity;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityEvent;
+import org.bukkit.event.inventory.InventoryEvent;
+import org.bukkit.event.player.PlayerEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.EventExecutor;
+
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Per-player results of a script which declared 'invalidate-on' events. A result is reused until
+ * one of those events fires for the player, turning a polled placeholder into an event driven one.
+ */
+public class InvalidationCache implements Listener, EventExecutor {
+
+    private static final String[] EVENT_PACKAGES = {
+            "org.bukkit.event.player.",
+            "org.bukkit.event.inventory.",
+            "org.bukkit.event.entity.",
+            "org.bukkit.event.block.",
+            "org.bukkit.event.enchantment.",
+            "org.bukkit.event.vehicle.",
+            "org.bukkit.event.world.",
+            "org.bukkit.event.server."
+    };
+    private static final int MAX_RESULTS_PER_PLAYER = 64;
+
+    private final String identifier;
+    private final List<Class<? extends Event>> events;
+    private final Map<UUID, Map<String, String>> results = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Optional<Method>> playerGetters = new ConcurrentHashMap<>();
+    // Invalidated again on the next tick
+    private final Set<UUID> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile boolean pendingAll;
+    private volatile boolean registered;
+
+    public InvalidationCache(String identifier, List<Class<? extends Event>> events) {
+        this.identifier = identifier;
+        this.events = events;
+    }
+
+    /**
+     * @return the cache, or null if none of the given events could be found
+     */
+    public static InvalidationCache fromNames(String identifier, List<String> names) {
+        final List<Class<? extends Event>> events = new ArrayList<>();
+
+        for (String name : names) {
+            final Class<? extends Event> event = findEvent(name);
+
+            if (event == null) {
+                ExpansionUtils.warnLog("Unknown event '" + name + "' in the invalidate-on list of " + identifier, null);
+                continue;
+            }
+            events.add(event);
+        }
+
+        return events.isEmpty() ? null : new InvalidationCache(identifier, events);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends Event> findEvent(String name) {
+        final List<String> candidates = new ArrayList<>();
+
+        if (name.contains(".")) {
+            candidates.add(name);
+        } else {
+            for (String eventPackage : EVENT_PACKAGES) {
+                candidates.add(eventPackage + name);
+            }
+        }
+
+        for (String candidate : candidates) {
+            try {
+                final Class<?> clazz = Class.forName(candidate, false, Bukkit.class.getClassLoader());
+
+                if (Event.class.isAssignableFrom(clazz)) {
+                    return (Class<? extends Event>) clazz;
+                }
+            } catch (ClassNotFoundException ignored) {
+            }
+        }
+        return null;
+    }
+
+    public void register() {
+        if (registered) {
+            return;
+        }
+
+        for (Class<? extends Event> event : events) {
+            try {
+                Bukkit.getPluginManager().registerEvent(event, this, EventPriority.MONITOR, this, PlaceholderAPIPlugin.getInstance(), false);
+            } catch (IllegalArgumentException | IllegalStateException ex) {
+                // Abstract events without a handler list can not be listened to
+                ExpansionUtils.warnLog("Can not listen to " + event.getSimpleName() + " for " + identifier + ": " + ex.getMessage(), null);
+            }
+        }
+
+        Bukkit.getPluginManager().registerEvent(PlayerQuitEvent.class, this, EventPriority.MONITOR, this, PlaceholderAPIPlugin.getInstance(), false);
+        registered = true;
+    }
+
+    public void unregister() {
+        HandlerList.unregisterAll(this);
+        registered = false;
+        results.clear();
+        pending.clear();
+    }
+
+    public String get(UUID player, String key) {
+        final Map<String, String> playerResults = results.get(player);
+        return playerResults == null ? null : playerResults.get(key);
+    }
+
+    /**
+     * Gets the map a result computed from now on should be stored in. An event firing during the
+     * computation replaces the map, so a result computed from outdated state is never served.
+     */
+    public Map<String, String> getResults(UUID player) {
+        return results.computeIfAbsent(player, uuid -> new ConcurrentHashMap<>());
+    }
+
+    public void put(Map<String, String> playerResults, String key, String value) {
+        if (playerResults.size() >= MAX_RESULTS_PER_PLAYER) {
+            playerResults.clear();
+        }
+        playerResults.put(key, value);
+    }
+
+    public void invalidate(UUID player) {
+        results.remove(player);
+    }
+
+    public void invalidateAll() {
+        results.clear();
+    }
+
+    public int size() {
+        return results.size();
+    }
+
+    /**
+     * Invalidates right away and again on the next tick. Listeners see most events before the
+     * server applies them, e.g. the new slot of a PlayerItemHeldEvent, so a result computed in
+     * between would keep the old state.
+     */
+    private void invalidateFromEvent(UUID player) {
+        invalidate(player);
+        pending.add(player);
+        scheduleNextTick();
+    }
+
+    private void invalidateAllFromEvent() {
+        invalidateAll();
+        pendingAll = true;
+        scheduleNextTick();
+    }
+
+    private void scheduleNextTick() {
+        if (registered && scheduled.compareAndSet(false, true)) {
+            Bukkit.getScheduler().runTask(PlaceholderAPIPlugin.getInstance(), this::invalidatePending);
+        }
+    }
+
+    private void invalidatePending() {
+        scheduled.set(false);
+
+        if (pendingAll) {
+            pendingAll = false;
+            pending.clear();
+            invalidateAll();
+            return;
+        }
+
+        for (Iterator<UUID> iterator = pending.iterator(); iterator.hasNext(); ) {
+            invalidate(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    @Override
+    public void execute(Listener listener, Event event) {
+        if (event instanceof PlayerQuitEvent) {
+            invalidate(((PlayerQuitEvent) event).getPlayer().getUniqueId());
+            return;
+        }
+
+        if (event instanceof PlayerEvent) {
+            invalidateFromEvent(((PlayerEvent) event).getPlayer().getUniqueId());
+            return;
+        }
+
+        if (event instanceof InventoryEvent) {
+            invalidateFromEvent(((InventoryEvent) event).getView().getPlayer().getUniqueId());
+            return;
+        }
+
+        if (event instanceof EntityEvent) {
+            final Entity entity = ((EntityEvent) event).getEntity();
+
+            if (entity instanceof HumanEntity) {
+                invalidateFromEvent(entity.getUniqueId());
+            }
+            return;
+        }
+
+        // e.g. BlockBreakEvent, which is not a PlayerEvent but has a player
+        final Optional<Method> getter = playerGetters.computeIfAbsent(event.getClass(), InvalidationCache::findPlayerGetter);
+
+        if (getter.isPresent()) {
+            try {
+                final Object player = getter.get().invoke(event);
+
+                if (player instanceof Entity) {
+                    invalidateFromEvent(((Entity) player).getUniqueId());
+                }
+            } catch (ReflectiveOperationException ignored) {
+            }
+            return;
+        }
+
+        // Not tied to a player, every result may be outdated
+        invalidateAllFromEvent();
+    }
+
+    private static Optional<Method> findPlayerGetter(Class<?> clazz) {
+        try {
+            final Method method = clazz.getMethod("getPlayer");
+
+            if (Entity.class.isAssignableFrom(method.getReturnType())) {
+                return Optional.of(method);
+            }
+        } catch (NoSuchMethodException ignored) {
+        }
+        return Optional.empty();
+    }
+}
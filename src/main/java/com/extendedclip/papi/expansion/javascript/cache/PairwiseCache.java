@@ -0,0 +1,136 @@
+package com.extendedclip.papi.expansion.javascript.cache;
+
+import me.clip.placeholderapi.PlaceholderAPIPlugin;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.EventExecutor;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Results of a relational placeholder per pair of players, kept for the script's
+ * 'relational-ttl'. Tab and nametag plugins request every pair on each refresh, the cache
+ * keeps that from evaluating the script once per pair every time. Entries of a player are
+ * dropped when they quit, as viewer or as the player viewed, and once more on the next tick
+ * for results of evaluations which were still running meanwhile.
+ */
+public class PairwiseCache implements Listener, EventExecutor {
+
+    public static final long DEFAULT_TTL = 1000;
+    private static final int MAX_RESULTS_PER_PLAYER = 1024;
+    private static final int MAX_RESULTS_PER_PAIR = 64;
+
+    private final long ttl;
+    // Viewer, then viewed player, then function and arguments
+    private final Map<UUID, Map<UUID, Map<String, Entry>>> results = new ConcurrentHashMap<>();
+    private boolean registered;
+
+    /**
+     * @param ttl time in milliseconds a result is reused
+     */
+    public PairwiseCache(long ttl) {
+        this.ttl = ttl;
+    }
+
+    public void register() {
+        if (registered) {
+            return;
+        }
+
+        Bukkit.getPluginManager().registerEvent(PlayerQuitEvent.class, this, EventPriority.MONITOR, this, PlaceholderAPIPlugin.getInstance(), false);
+        registered = true;
+    }
+
+    public void unregister() {
+        HandlerList.unregisterAll(this);
+        results.clear();
+        registered = false;
+    }
+
+    public String get(UUID one, UUID two, String key) {
+        final Map<UUID, Map<String, Entry>> viewed = results.get(one);
+        final Map<String, Entry> pair = viewed == null ? null : viewed.get(two);
+        final Entry entry = pair == null ? null : pair.get(key);
+
+        if (entry == null || entry.expires < System.currentTimeMillis()) {
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Keeps the result for the pair unless one of them quit, checked after the result is stored so
+     * a quit handled meanwhile either removes it or is seen here.
+     */
+    public void put(Player one, Player two, String key, String value) {
+        final UUID viewer = one.getUniqueId();
+        final UUID viewed = two.getUniqueId();
+        final Map<UUID, Map<String, Entry>> pairs = results.computeIfAbsent(viewer, uuid -> new ConcurrentHashMap<>());
+
+        // Expired entries are only replaced, a full map is dropped instead of scanned
+        if (pairs.size() >= MAX_RESULTS_PER_PLAYER) {
+            pairs.clear();
+        }
+
+        final Map<String, Entry> pair = pairs.computeIfAbsent(viewed, uuid -> new ConcurrentHashMap<>());
+
+        if (pair.size() >= MAX_RESULTS_PER_PAIR && !pair.containsKey(key)) {
+            pair.clear();
+        }
+
+        pair.put(key, new Entry(value, System.currentTimeMillis() + ttl));
+
+        if (!one.isOnline()) {
+            invalidate(viewer);
+        }
+        if (!two.isOnline()) {
+            invalidate(viewed);
+        }
+    }
+
+    public void invalidate(UUID player) {
+        results.remove(player);
+        results.values().forEach(viewed -> viewed.remove(player));
+    }
+
+    public void invalidateAll() {
+        results.clear();
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    @Override
+    public void execute(Listener listener, Event event) {
+        if (event instanceof PlayerQuitEvent) {
+            final UUID player = ((PlayerQuitEvent) event).getPlayer().getUniqueId();
+            invalidate(player);
+
+            // The player is still online during the event, a result stored now is only caught
+            // by put() once they are gone
+            final PlaceholderAPIPlugin plugin = PlaceholderAPIPlugin.getInstance();
+            if (plugin.isEnabled()) {
+                Bukkit.getScheduler().runTask(plugin, () -> invalidate(player));
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        private final String value;
+        private final long expires;
+
+        private Entry(String value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.extendedclip.papi.expansion.javascript.cache;
+
+import org.graalvm.polyglot.Value;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache bound to scripts as 'Cache'.
+ * <pre>
+ * var formatted = Cache.get("date", function (key) { return expensive(); });
+ * var user = Cache.get("user_" + name, loadUser, 60000);
+ * </pre>
+ * The cache is shared by the requests and the async tasks of a script, which run in different
+ * contexts. Values are stored as plain Java values, objects come back as maps and arrays as
+ * lists, like with Data. Functions can not be cached.
+ */
+public class ScriptCache {
+
+    private final int maxSize;
+    private final long defaultTtl;
+    private final LinkedHashMap<String, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxSize    the maximum amount of entries, the least recently used are evicted first
+     * @param defaultTtl time in milliseconds an entry stays valid, 0 to never expire
+     */
+    public ScriptCache(int maxSize, long defaultTtl) {
+        this.maxSize = Math.max(1, maxSize);
+        this.defaultTtl = Math.max(0, defaultTtl);
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > ScriptCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public Object get(String key, Value loader) {
+        return get(key, loader, defaultTtl);
+    }
+
+    /**
+     * Runs the loader without holding the cache, a slow loader does not block other scripts
+     * or the metrics. Requests missing the same key at once may each run it, the last result
+     * is kept.
+     */
+    public Object get(String key, Value loader, long ttl) {
+        final Object value = getIfPresent(key);
+
+        if (value != null) {
+            return value;
+        }
+
+        final Object loaded = toHost(loader.execute(key));
+        if (loaded == null) {
+            return null;
+        }
+
+        put(key, loaded, ttl);
+        return loaded;
+    }
+
+    public synchronized Object getIfPresent(String key) {
+        final Entry entry = entries.get(key);
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        if (entry.isExpired(System.currentTimeMillis())) {
+            entries.remove(key);
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    public void put(String key, Object value) {
+        put(key, value, defaultTtl);
+    }
+
+    public void put(String key, Object value, long ttl) {
+        // Converted before locking, reading a script value may run script code
+        final Object converted = toHost(value);
+        final long expiry = ttl > 0 ? System.currentTimeMillis() + ttl : 0;
+
+        synchronized (this) {
+            if (converted == null) {
+                entries.remove(key);
+            } else {
+                entries.put(key, new Entry(converted, expiry));
+            }
+        }
+    }
+
+    public synchronized void invalidate(String key) {
+        entries.remove(key);
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * Removes the expired entries, they are otherwise only dropped when looked up or evicted.
+     */
+    public synchronized void cleanUp() {
+        final long now = System.currentTimeMillis();
+        final Iterator<Entry> iterator = entries.values().iterator();
+
+        while (iterator.hasNext()) {
+            if (iterator.next().isExpired(now)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public double getHitRatio() {
+        final long hits = getHits();
+        final long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return the value as plain Java objects, script values belong to the context which created
+     * them and can not be read from another one
+     */
+    static Object toHost(Object object) {
+        if (object == null || object instanceof String || object instanceof Number || object instanceof Boolean) {
+            return object;
+        }
+
+        final Value value = object instanceof Value ? (Value) object : Value.asValue(object);
+
+        if (value.isNull()) {
+            return null;
+        }
+        if (value.isHostObject()) {
+            return value.asHostObject();
+        }
+        if (value.isBoolean()) {
+            return value.asBoolean();
+        }
+        if (value.isNumber()) {
+            return value.fitsInLong() ? (Object) value.asLong() : value.asDouble();
+        }
+        if (value.isString()) {
+            return value.asString();
+        }
+        if (value.canExecute()) {
+            throw new IllegalArgumentException("Functions can not be cached, they only exist in the context of the script which defined them");
+        }
+
+        if (value.hasArrayElements()) {
+            final List<Object> list = new ArrayList<>((int) value.getArraySize());
+            for (long i = 0; i < value.getArraySize(); i++) {
+                list.add(toHost(value.getArrayElement(i)));
+            }
+            return list;
+        }
+
+        if (value.hasMembers()) {
+            final Map<String, Object> map = new LinkedHashMap<>();
+            for (String key : value.getMemberKeys()) {
+                map.put(key, toHost(value.getMember(key)));
+            }
+            return map;
+        }
+        return value.toString();
+    }
+
+    private static final class Entry {
+
+        private final Object value;
+        private final long expiry;
+
+        private Entry(Object value, long expiry) {
+            this.value = value;
+            this.expiry = expiry;
+        }
+
+        private boolean isExpired(long now) {
+            return expiry != 0 && expiry <= now;
+        }
+    }
+}
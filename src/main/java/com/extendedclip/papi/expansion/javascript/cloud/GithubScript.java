@@ -27,13 +27,19 @@ public class GithubScript {
     private final String author;
     private final String description;
     private final String url;
+    private final String sha256;
 
     public GithubScript(String name, String version, String author, String description, String url) {
+        this(name, version, author, description, url, null);
+    }
+
+    public GithubScript(String name, String version, String author, String description, String url, String sha256) {
         this.name = name;
         this.version = version;
         this.author = author;
         this.description = description;
         this.url = url;
+        this.sha256 = sha256;
     }
 
     public String getName() {
@@ -55,4 +61,11 @@ public class GithubScript {
     public String getUrl() {
         return url;
     }
+
+    /**
+     * @return the expected SHA-256 of the script as hex, or null if the script list does not declare one
+     */
+    public String getSha256() {
+        return sha256;
+    }
 }
@@ -23,87 +23,366 @@ package com.extendedclip.papi.expansion.javascript.cloud;
 import com.extendedclip.papi.expansion.javascript.ExpansionUtils;
 import com.extendedclip.papi.expansion.javascript.JavascriptExpansion;
 import com.extendedclip.papi.expansion.javascript.manager.ConfigManager;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import org.bukkit.Bukkit;
+import org.bukkit.configuration.file.FileConfiguration;
 
 import java.io.*;
+import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
-import java.util.stream.Collectors;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 
 public class GithubScriptManager {
 
+    private static final int CONNECT_TIMEOUT = 5000;
+    private static final int READ_TIMEOUT = 10000;
+    private static final int DOWNLOAD_THREADS = 4;
+    private static final String MASTER_LIST_URL = "https://raw.githubusercontent.com/PlaceholderAPI/Javascript-Expansion/master/scripts/master_list.json";
+    // Names become file names and config keys, path separators and dots must not reach either
+    private static final Pattern VALID_NAME = Pattern.compile("[A-Za-z0-9_-]+");
+
     private final JavascriptExpansion expansion;
     private final String JAVASCRIPTS_FOLDER;
-    private List<GithubScript> availableScripts;
-    private final String MASTER_LIST_URL = "https://raw.githubusercontent.com/PlaceholderAPI/Javascript-Expansion/master/scripts/master_list.json";
-    private final Gson GSON = new Gson();
+    private final File indexFile;
+    private final File indexMetaFile;
+    private volatile List<GithubScript> availableScripts;
+    private volatile Map<String, GithubScript> scriptsByName;
+    private ExecutorService downloadExecutor;
+    private final String indexUrl;
 
     public GithubScriptManager(JavascriptExpansion expansion) {
+        this(expansion, MASTER_LIST_URL);
+    }
+
+    /**
+     * @param indexUrl where the script list is downloaded from, e.g. a local server in tests
+     */
+    GithubScriptManager(JavascriptExpansion expansion, String indexUrl) {
         this.expansion = expansion;
+        this.indexUrl = indexUrl;
         JAVASCRIPTS_FOLDER = expansion.getPlaceholderAPI().getDataFolder()
                 + File.separator
                 + "javascripts"
                 + File.separator;
+
+        final File cacheFolder = new File(JAVASCRIPTS_FOLDER, ".cache");
+        this.indexFile = new File(cacheFolder, "master_list.json");
+        this.indexMetaFile = new File(cacheFolder, "master_list.properties");
     }
 
-    public void clear() {
+    public synchronized void clear() {
         availableScripts = null;
+        scriptsByName = null;
+
+        if (downloadExecutor != null) {
+            downloadExecutor.shutdownNow();
+            downloadExecutor = null;
+        }
     }
 
     public void fetch() {
-        Bukkit.getScheduler().runTaskAsynchronously(expansion.getPlaceholderAPI(), () -> {
-            final String json = getContents(MASTER_LIST_URL);
+        Bukkit.getScheduler().runTaskAsynchronously(expansion.getPlaceholderAPI(), this::fetchIndex);
+    }
+
+    /**
+     * Refreshes the cached script list and reads it, on the calling thread.
+     */
+    void fetchIndex() {
+        try {
+            refreshIndex();
+        } catch (IOException e) {
+            ExpansionUtils.warnLog("Could not fetch the Github script list (" + e.getMessage() + ")"
+                    + (indexFile.exists() ? ", using the cached copy" : ""), null);
+        }
 
-            if (json.isEmpty()) {
+        if (!indexFile.exists()) {
+            return;
+        }
+
+        try {
+            setScripts(parseIndex(indexFile));
+        } catch (IOException | IllegalStateException e) {
+            ExpansionUtils.warnLog("Could not read the cached Github script list: " + e.getMessage(), null);
+        }
+    }
+
+    /**
+     * Downloads the script list unless the cached copy is still current, which the server reports
+     * through the ETag and Last-Modified headers of the previous download.
+     */
+    private void refreshIndex() throws IOException {
+        final Properties meta = new Properties();
+
+        if (indexFile.exists() && indexMetaFile.exists()) {
+            try (InputStream in = new FileInputStream(indexMetaFile)) {
+                meta.load(in);
+            }
+        }
+
+        final HttpURLConnection connection = openConnection(indexUrl);
+        try {
+            if (meta.getProperty("etag") != null) {
+                connection.setRequestProperty("If-None-Match", meta.getProperty("etag"));
+            }
+            if (meta.getProperty("last-modified") != null) {
+                connection.setRequestProperty("If-Modified-Since", meta.getProperty("last-modified"));
+            }
+
+            final int status = connection.getResponseCode();
+
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
                 return;
             }
 
-            availableScripts = GSON.fromJson(json, new TypeToken<ArrayList<GithubScript>>() {}.getType());
-        });
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + status);
+            }
+
+            Files.createDirectories(indexFile.getParentFile().toPath());
+            final Path temp = Files.createTempFile(indexFile.getParentFile().toPath(), "master_list", ".tmp");
+
+            try (InputStream in = connection.getInputStream()) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temp, indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+
+            meta.clear();
+            if (connection.getHeaderField("ETag") != null) {
+                meta.setProperty("etag", connection.getHeaderField("ETag"));
+            }
+            if (connection.getHeaderField("Last-Modified") != null) {
+                meta.setProperty("last-modified", connection.getHeaderField("Last-Modified"));
+            }
+
+            try (OutputStream out = new FileOutputStream(indexMetaFile)) {
+                meta.store(out, "Github script list cache");
+            }
+        } finally {
+            connection.disconnect();
+        }
     }
 
-    public void downloadScript(GithubScript script) {
-        Bukkit.getScheduler().runTaskAsynchronously(expansion.getPlaceholderAPI(), () -> {
-            final List<String> contents = read(script.getUrl());
+    private List<GithubScript> parseIndex(File file) throws IOException {
+        final List<GithubScript> scripts = new ArrayList<>();
+        final List<String> invalid = new ArrayList<>();
 
-            if (contents.isEmpty()) {
-                return;
+        try (JsonReader reader = new JsonReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            reader.beginArray();
+
+            while (reader.hasNext()) {
+                final GithubScript script = readScript(reader);
+
+                if (script.getName() == null) {
+                    continue;
+                }
+
+                if (isValidName(script.getName())) {
+                    scripts.add(script);
+                } else {
+                    invalid.add(script.getName());
+                }
             }
 
-            try (final PrintStream out = new PrintStream(new FileOutputStream(new File(JAVASCRIPTS_FOLDER, script.getName() + ".js")))) {
-                contents.forEach(out::println);
-            } catch (FileNotFoundException e) {
-                ExpansionUtils.errorLog("An error occurred while downloading " + script.getName(), e);
-                return;
+            reader.endArray();
+        }
+
+        if (!invalid.isEmpty()) {
+            ExpansionUtils.warnLog("Ignoring Github script" + ExpansionUtils.plural(invalid.size()) + " with invalid names: " + invalid, null);
+        }
+        return scripts;
+    }
+
+    private GithubScript readScript(JsonReader reader) throws IOException {
+        String name = null;
+        String version = null;
+        String author = null;
+        String description = null;
+        String url = null;
+        String sha256 = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String field = reader.nextName();
+
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+
+            switch (field) {
+                case "name":
+                    name = reader.nextString();
+                    break;
+                case "version":
+                    version = reader.nextString();
+                    break;
+                case "author":
+                    author = reader.nextString();
+                    break;
+                case "description":
+                    description = reader.nextString();
+                    break;
+                case "url":
+                    url = reader.nextString();
+                    break;
+                case "sha256":
+                    sha256 = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
             }
+        }
+        reader.endObject();
+
+        return new GithubScript(name, version, author, description, url, sha256);
+    }
 
-            Bukkit.getScheduler().runTask(expansion.getPlaceholderAPI(), () -> {
-                ConfigManager config = expansion.getConfigManager();
-                config.loadData().set(script.getName() + ".file", script.getName() + ".js");
+    private void setScripts(List<GithubScript> scripts) {
+        final Map<String, GithubScript> byName = new HashMap<>();
+        scripts.forEach(script -> byName.put(script.getName().toLowerCase(), script));
 
-                config.saveData();
-            });
-        });
+        this.scriptsByName = byName;
+        this.availableScripts = Collections.unmodifiableList(scripts);
+    }
+
+    /**
+     * Downloads the scripts in parallel. Every script is streamed to a temporary file, checked
+     * against its hash when the script list declares one and then moved into place, so a failed
+     * download never leaves a partial script behind. Once all downloads finished the new scripts
+     * are added to the config in a single save and loaded, then the callback runs on the main thread.
+     */
+    public void downloadScripts(List<GithubScript> scripts, Consumer<DownloadResult> callback) {
+        final ExecutorService executor = getDownloadExecutor();
+        final DownloadResult result = new DownloadResult();
+        final List<CompletableFuture<Void>> downloads = new ArrayList<>();
+
+        for (GithubScript script : scripts) {
+            downloads.add(CompletableFuture.runAsync(() -> {
+                try {
+                    download(script);
+                    result.downloaded.add(script.getName());
+                } catch (IOException | IllegalStateException ex) {
+                    result.failed.put(script.getName(), ex.getMessage());
+                }
+            }, executor));
+        }
+
+        CompletableFuture.allOf(downloads.toArray(new CompletableFuture[0])).whenComplete((ignored, throwable) ->
+                Bukkit.getScheduler().runTask(expansion.getPlaceholderAPI(), () -> {
+                    if (!result.downloaded.isEmpty()) {
+                        final ConfigManager config = expansion.getConfigManager();
+                        final FileConfiguration data = config.loadData();
+                        result.downloaded.forEach(name -> data.set(name + ".file", name + ".js"));
+                        config.saveData();
+
+                        expansion.getConfig().loadPlaceholders(result.downloaded);
+                    }
+                    callback.accept(result);
+                }));
     }
 
-    private String getContents(String url) {
-        return String.join("", read(url));
+    static boolean isValidName(String name) {
+        return VALID_NAME.matcher(name).matches();
     }
 
-    private List<String> read(final String url) {
-        final List<String> lines = new ArrayList<>();
+    /**
+     * Downloads a single script into the javascripts folder, on the calling thread.
+     */
+    void download(GithubScript script) throws IOException {
+        if (script.getName() == null || !isValidName(script.getName())) {
+            throw new IOException("invalid name, only letters, digits, '_' and '-' are allowed");
+        }
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new URL(url).openStream()))) {
-            lines.addAll(reader.lines().filter(Objects::nonNull).collect(Collectors.toList()));
-        } catch (Exception ex) {
-            ex.printStackTrace();
+        if (script.getUrl() == null) {
+            throw new IOException("no url");
         }
 
-        return lines;
+        final Path target = new File(JAVASCRIPTS_FOLDER, script.getName() + ".js").toPath();
+
+        if (Files.exists(target)) {
+            throw new IOException("a file with the same name already exists");
+        }
+
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        Files.createDirectories(target.getParent());
+        final Path temp = Files.createTempFile(target.getParent(), script.getName(), ".tmp");
+        final HttpURLConnection connection = openConnection(script.getUrl());
+
+        try {
+            final int status = connection.getResponseCode();
+
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + status);
+            }
+
+            try (InputStream in = new DigestInputStream(connection.getInputStream(), digest)) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            final String hash = toHex(digest.digest());
+            if (script.getSha256() != null && !script.getSha256().equalsIgnoreCase(hash)) {
+                throw new IOException("checksum mismatch, expected " + script.getSha256() + " but got " + hash);
+            }
+
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            connection.disconnect();
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        final StringBuilder builder = new StringBuilder(bytes.length * 2);
+
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    private synchronized ExecutorService getDownloadExecutor() {
+        if (downloadExecutor == null) {
+            final AtomicInteger threads = new AtomicInteger();
+            downloadExecutor = Executors.newFixedThreadPool(DOWNLOAD_THREADS, runnable -> {
+                final Thread thread = new Thread(runnable, "Javascript-Expansion download #" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return downloadExecutor;
+    }
+
+    private HttpURLConnection openConnection(String url) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        connection.setRequestProperty("User-Agent", "Javascript-Expansion/" + expansion.getVersion());
+        return connection;
     }
 
     public List<GithubScript> getAvailableScripts() {
@@ -111,17 +390,33 @@ public class GithubScriptManager {
     }
 
     public GithubScript getScript(final String name) {
-        if (availableScripts == null) {
+        final Map<String, GithubScript> scriptsByName = this.scriptsByName;
+
+        if (scriptsByName == null || name == null) {
             return null;
         }
 
-        return availableScripts.stream()
-                .filter(s -> s.getName().equalsIgnoreCase(name))
-                .findFirst()
-                .orElse(null);
+        return scriptsByName.get(name.toLowerCase());
     }
 
     public String getJavascriptsFolder() {
         return JAVASCRIPTS_FOLDER;
     }
+
+    public static class DownloadResult {
+
+        private final List<String> downloaded = Collections.synchronizedList(new ArrayList<>());
+        private final Map<String, String> failed = new ConcurrentHashMap<>();
+
+        public List<String> getDownloaded() {
+            return downloaded;
+        }
+
+        /**
+         * @return the scripts which could not be downloaded, mapped to the reason
+         */
+        public Map<String, String> getFailed() {
+            return failed;
+        }
+    }
 }
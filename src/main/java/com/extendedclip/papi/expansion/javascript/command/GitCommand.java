@@ -9,6 +9,8 @@ import org.bukkit.command.CommandSender;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -45,6 +47,12 @@ public class GitCommand extends ICommand {
 
             case "list": {
                 final List<GithubScript> availableScripts = manager.getAvailableScripts();
+
+                if (availableScripts == null) {
+                    ExpansionUtils.sendMsg(sender, "&cThe script list has not been fetched yet, try again in a moment.");
+                    return;
+                }
+
                 final Set<String> scripts = availableScripts.stream().map(GithubScript::getName).collect(Collectors.toSet());
 
                 ExpansionUtils.sendMsg(sender, availableScripts.size() + " &escript" + ExpansionUtils.plural(availableScripts.size()) + " available on Github.", String.join(", ", scripts));
@@ -76,24 +84,46 @@ public class GitCommand extends ICommand {
 
             case "download": {
                 if (args.length < 2) {
-                    ExpansionUtils.sendMsg(sender, "&cIncorrect usage! &f/" + command + " git download [name]");
+                    ExpansionUtils.sendMsg(sender, "&cIncorrect usage! &f/" + command + " git download [name...]");
                     return;
                 }
 
-                final GithubScript script = manager.getScript(args[1]);
+                final List<GithubScript> scripts = new ArrayList<>();
 
-                if (script == null) {
-                    ExpansionUtils.sendMsg(sender, "&cThe script &f" + args[1] + " &cdoes not exist!");
-                    return;
+                for (String name : Arrays.copyOfRange(args, 1, args.length)) {
+                    final GithubScript script = manager.getScript(name);
+
+                    if (script == null) {
+                        ExpansionUtils.sendMsg(sender, "&cThe script &f" + name + " &cdoes not exist!");
+                        continue;
+                    }
+
+                    if (new File(manager.getJavascriptsFolder(), script.getName() + ".js").exists()) {
+                        ExpansionUtils.sendMsg(sender, "&cCould not download " + script.getName() + " because a file with the same name already exist in the javascripts folder.");
+                        continue;
+                    }
+
+                    if (!scripts.contains(script)) {
+                        scripts.add(script);
+                    }
                 }
 
-                if (new File(expansion.getGithubScriptManager().getJavascriptsFolder(), script.getName() + ".js").exists()) {
-                    ExpansionUtils.sendMsg(sender, "&cCould not download " + script.getName() + " because a file with the same name already exist in the javascripts folder.");
+                download(sender, manager, scripts);
+                return;
+            }
+
+            case "download-all": {
+                final List<GithubScript> availableScripts = manager.getAvailableScripts();
+
+                if (availableScripts == null) {
+                    ExpansionUtils.sendMsg(sender, "&cThe script list has not been fetched yet, try again in a moment.");
                     return;
                 }
 
-                manager.downloadScript(script);
-                ExpansionUtils.sendMsg(sender, "&aDownload started. &eCheck the scripts folder in a moment...");
+                // Scripts which already exist locally are skipped instead of overwritten
+                download(sender, manager, availableScripts.stream()
+                        .filter(script -> !new File(manager.getJavascriptsFolder(), script.getName() + ".js").exists())
+                        .collect(Collectors.toList()));
                 return;
             }
 
@@ -131,6 +161,24 @@ public class GitCommand extends ICommand {
         }
     }
 
+    private void download(CommandSender sender, GithubScriptManager manager, List<GithubScript> scripts) {
+        if (scripts.isEmpty()) {
+            ExpansionUtils.sendMsg(sender, "&eThere is nothing to download.");
+            return;
+        }
+
+        ExpansionUtils.sendMsg(sender, "&aDownloading " + scripts.size() + " script" + ExpansionUtils.plural(scripts.size()) + "...");
+
+        manager.downloadScripts(scripts, result -> {
+            if (!result.getDownloaded().isEmpty()) {
+                ExpansionUtils.sendMsg(sender, "&aDownloaded and loaded: &f" + String.join(", ", result.getDownloaded()));
+            }
+
+            result.getFailed().forEach((name, reason) ->
+                    ExpansionUtils.sendMsg(sender, "&cCould not download &f" + name + "&c: " + reason));
+        });
+    }
+
     @Override
     public @NotNull String getAlias() {
         return "git";
@@ -2,10 +2,12 @@ package com.extendedclip.papi.expansion.javascript.command;
 
 import com.extendedclip.papi.expansion.javascript.ExpansionUtils;
 import com.extendedclip.papi.expansion.javascript.JavascriptExpansion;
+import com.extendedclip.papi.expansion.javascript.JavascriptPlaceholder;
 import org.bukkit.command.CommandSender;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.List;
+import java.util.Set;
 
 public class ListCommand extends ICommand {
 
@@ -21,6 +23,13 @@ public class ListCommand extends ICommand {
         final List<String> loaded = expansion.getLoadedIdentifiers();
         ExpansionUtils.sendMsg(sender,loaded.size() + " &7script" + ExpansionUtils.plural(loaded.size()) + " loaded.",
                 String.join(", ", loaded));
+
+        final Set<JavascriptPlaceholder> scripts = expansion.getJSPlaceholders();
+        final long active = scripts.stream().filter(JavascriptPlaceholder::hasContext).count();
+        final long evicted = scripts.stream().mapToLong(JavascriptPlaceholder::getEvictions).sum();
+
+        ExpansionUtils.sendMsg(sender, "&7Contexts: &f" + active + " &7active, &f" + (scripts.size() - active) + " &7idle, &f"
+                + evicted + " &7evicted since the last reload.");
     }
 
     @Override
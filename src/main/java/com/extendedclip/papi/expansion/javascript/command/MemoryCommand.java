@@ -0,0 +1,106 @@
+package com.extendedclip.papi.expansion.javascript.command;
+
+import com.extendedclip.papi.expansion.javascript.ExpansionUtils;
+import com.extendedclip.papi.expansion.javascript.JavascriptExpansion;
+import com.extendedclip.papi.expansion.javascript.JavascriptPlaceholder;
+import com.extendedclip.papi.expansion.javascript.ScriptData;
+import org.bukkit.command.CommandSender;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+public class MemoryCommand extends ICommand {
+
+    private final JavascriptExpansion expansion;
+
+    public MemoryCommand(JavascriptExpansion expansion) {
+        this.expansion = expansion;
+    }
+
+    @Override
+    public void execute(CommandSender sender, String[] args) {
+        final List<JavascriptPlaceholder> placeholders = new ArrayList<>(expansion.getJSPlaceholders());
+
+        if (args.length > 0) {
+            final JavascriptPlaceholder placeholder = expansion.getJSPlaceholder(args[0]);
+
+            if (placeholder == null) {
+                ExpansionUtils.sendMsg(sender, "&cInvalid javascript identifier! Please re-check your typo");
+                return;
+            }
+            placeholders.clear();
+            placeholders.add(placeholder);
+        }
+
+        final List<Usage> usages = new ArrayList<>(placeholders.size());
+        placeholders.forEach(placeholder -> usages.add(new Usage(placeholder)));
+        usages.sort(Comparator.comparingLong(Usage::getTotal).reversed());
+
+        final long total = usages.stream().mapToLong(Usage::getTotal).sum();
+        ExpansionUtils.sendMsg(sender, "&eScript memory &7(approximate, " + formatSize(total) + " in total, context heaps are not reported by the runtime)");
+
+        for (Usage usage : usages) {
+            final ScriptData data = usage.placeholder.getData();
+            final String limit = data.getHardLimit() > 0 ? "/" + data.getHardLimit() : "";
+
+            ExpansionUtils.sendMsg(sender, "&f" + usage.placeholder.getIdentifier()
+                    + " &7data: " + (data.isLoaded() ? "&f" + usage.dataEntries + limit + " &7entries, &f" + formatSize(usage.dataSize) : "&8not loaded")
+                    + " &7temp: &f" + usage.tempEntries + " &7entries, &f" + formatSize(usage.tempSize)
+                    + " &7cache: &f" + usage.placeholder.getCache().size() + " &7entries");
+        }
+    }
+
+    private static String formatSize(long bytes) {
+        if (bytes < 0) {
+            return "?";
+        }
+        if (bytes < 1024) {
+            return bytes + "B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1fKB", bytes / 1024.0);
+        }
+        return String.format("%.1fMB", bytes / (1024.0 * 1024.0));
+    }
+
+    private static long estimate(Map<String, Object> map) {
+        try {
+            return ExpansionUtils.estimateSize(map);
+        } catch (RuntimeException ex) {
+            // Written to by a script at the same time, or holds values of a closed context
+            return -1;
+        }
+    }
+
+    private static final class Usage {
+
+        private final JavascriptPlaceholder placeholder;
+        private final int dataEntries;
+        private final long dataSize;
+        private final int tempEntries;
+        private final long tempSize;
+
+        private Usage(JavascriptPlaceholder placeholder) {
+            this.placeholder = placeholder;
+
+            final ScriptData data = placeholder.getData();
+            this.dataEntries = data.peekData().size();
+            this.dataSize = estimate(data.peekData());
+            this.tempEntries = data.getTempData().size();
+            this.tempSize = estimate(data.getTempData());
+        }
+
+        private long getTotal() {
+            return Math.max(0, dataSize) + Math.max(0, tempSize);
+        }
+    }
+
+    @Override
+    @NotNull
+    public String getAlias() {
+        return "memory";
+    }
+}
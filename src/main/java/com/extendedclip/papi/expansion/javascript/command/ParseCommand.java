@@ -2,7 +2,7 @@ package com.extendedclip.papi.expansion.javascript.command;
 
 import com.extendedclip.papi.expansion.javascript.ExpansionUtils;
 import com.extendedclip.papi.expansion.javascript.JavascriptExpansion;
-import com.extendedclip.papi.expansion.javascript.JavascriptPlaceholder;
+import com.extendedclip.papi.expansion.javascript.ReplContext;
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.command.CommandSender;
@@ -27,7 +27,6 @@ public class ParseCommand extends ICommand {
         }
 
         final String script = String.join(" ", Arrays.copyOfRange(args, 1, args.length));
-        final JavascriptPlaceholder placeholder = new JavascriptPlaceholder("parse-command", String.join(" ", script));
 
         if ("me".equalsIgnoreCase(args[0])) {
             if (!(sender instanceof Player)) {
@@ -35,18 +34,29 @@ public class ParseCommand extends ICommand {
                 return;
             }
 
-            sender.sendMessage(placeholder.evaluate((Player) sender));
+            evaluate(sender, (Player) sender, script);
             return;
         }
 
-        final OfflinePlayer player = Bukkit.getOfflinePlayer(args[1]);
+        final OfflinePlayer player = Bukkit.getOfflinePlayer(args[0]);
 
         if (!player.hasPlayedBefore() || player.getName() == null) {
-            ExpansionUtils.sendMsg(sender, "&cUnknown player " + args[1]);
+            ExpansionUtils.sendMsg(sender, "&cUnknown player " + args[0]);
             return;
         }
 
-        sender.sendMessage(placeholder.evaluate(player));
+        evaluate(sender, player, script);
+    }
+
+    private void evaluate(CommandSender sender, OfflinePlayer player, String script) {
+        final ReplContext.Result result = expansion.getReplContext().evaluate(player, script);
+
+        if (result.isError()) {
+            ExpansionUtils.sendMsg(sender, "&c" + result.getOutput());
+        } else {
+            sender.sendMessage(result.getOutput());
+        }
+        ExpansionUtils.sendMsg(sender, "&7Evaluated in &f" + String.format("%.3f", result.getMillis()) + "ms");
     }
 
     @Override
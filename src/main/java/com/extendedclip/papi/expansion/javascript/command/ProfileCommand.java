@@ -0,0 +1,71 @@
+package com.extendedclip.papi.expansion.javascript.command;
+
+import com.extendedclip.papi.expansion.javascript.ExpansionUtils;
+import com.extendedclip.papi.expansion.javascript.JavascriptExpansion;
+import com.extendedclip.papi.expansion.javascript.JavascriptPlaceholder;
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.jetbrains.annotations.NotNull;
+
+public class ProfileCommand extends ICommand {
+
+    private static final int MAX_SECONDS = 300;
+
+    private final JavascriptExpansion expansion;
+
+    public ProfileCommand(JavascriptExpansion expansion) {
+        this.expansion = expansion;
+    }
+
+    @Override
+    public void execute(CommandSender sender, String[] args) {
+        if (args.length < 2) {
+            ExpansionUtils.sendMsg(sender, "&cIncorrect usage! &f/" + command + " profile [identifier] [seconds]");
+            return;
+        }
+
+        final JavascriptPlaceholder placeholder = expansion.getJSPlaceholder(args[0]);
+
+        if (placeholder == null) {
+            ExpansionUtils.sendMsg(sender, "&cInvalid javascript identifier! Please re-check your typo");
+            return;
+        }
+
+        final int seconds;
+        try {
+            seconds = Integer.parseInt(args[1]);
+        } catch (NumberFormatException ex) {
+            ExpansionUtils.sendMsg(sender, "&c" + args[1] + " is not a valid amount of seconds!");
+            return;
+        }
+
+        if (seconds < 1 || seconds > MAX_SECONDS) {
+            ExpansionUtils.sendMsg(sender, "&cThe profile duration must be between 1 and " + MAX_SECONDS + " seconds!");
+            return;
+        }
+
+        final boolean started = expansion.getProfiler().start(placeholder.getIdentifier(), seconds, summary ->
+                Bukkit.getScheduler().runTask(expansion.getPlaceholderAPI(), () -> {
+                    if (summary == null) {
+                        ExpansionUtils.sendMsg(sender, "&cCould not write the profile of &f" + placeholder.getIdentifier() + "&c, check the console.");
+                        return;
+                    }
+                    ExpansionUtils.sendMsg(sender, "&aProfile of &f" + placeholder.getIdentifier() + " &awritten to &fjavascripts/profiles/" + summary.getName(),
+                            "&7The matching .collapsed file can be opened with flamegraph.pl or speedscope.");
+                }));
+
+        if (!started) {
+            ExpansionUtils.sendMsg(sender, "&c" + placeholder.getIdentifier() + " is already being profiled!");
+            return;
+        }
+
+        ExpansionUtils.sendMsg(sender, "&aProfiling &f" + placeholder.getIdentifier() + " &afor " + seconds + " second" + ExpansionUtils.plural(seconds) + "...",
+                "&7The whole engine is sampled meanwhile, every script may run slower. Only stacks through &f" + placeholder.getIdentifier() + " &7are kept.");
+    }
+
+    @Override
+    @NotNull
+    public String getAlias() {
+        return "profile";
+    }
+}
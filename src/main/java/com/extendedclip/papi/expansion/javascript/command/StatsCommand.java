@@ -0,0 +1,57 @@
+package com.extendedclip.papi.expansion.javascript.command;
+
+import com.extendedclip.papi.expansion.javascript.ExpansionUtils;
+import com.extendedclip.papi.expansion.javascript.JavascriptExpansion;
+import com.extendedclip.papi.expansion.javascript.JavascriptPlaceholder;
+import com.extendedclip.papi.expansion.javascript.cache.ScriptCache;
+import org.bukkit.command.CommandSender;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+public class StatsCommand extends ICommand {
+
+    private final JavascriptExpansion expansion;
+
+    public StatsCommand(JavascriptExpansion expansion) {
+        this.expansion = expansion;
+    }
+
+    @Override
+    public void execute(CommandSender sender, String[] args) {
+        final List<JavascriptPlaceholder> placeholders = new ArrayList<>(expansion.getJSPlaceholders());
+
+        if (args.length > 0) {
+            final JavascriptPlaceholder placeholder = expansion.getJSPlaceholder(args[0]);
+
+            if (placeholder == null) {
+                ExpansionUtils.sendMsg(sender, "&cInvalid javascript identifier! Please re-check your typo");
+                return;
+            }
+            placeholders.clear();
+            placeholders.add(placeholder);
+        }
+
+        placeholders.sort(Comparator.comparing(JavascriptPlaceholder::getIdentifier));
+        ExpansionUtils.sendMsg(sender, "&eCache statistics &7(" + placeholders.size() + " script" + ExpansionUtils.plural(placeholders.size()) + ")");
+
+        for (JavascriptPlaceholder placeholder : placeholders) {
+            final ScriptCache cache = placeholder.getCache();
+
+            ExpansionUtils.sendMsg(sender, "&f" + placeholder.getIdentifier()
+                    + " &7entries: &f" + cache.size() + "/" + cache.getMaxSize()
+                    + " &7hits: &f" + cache.getHits()
+                    + " &7misses: &f" + cache.getMisses()
+                    + " &7evictions: &f" + cache.getEvictions()
+                    + " &7hit ratio: &f" + String.format("%.1f%%", cache.getHitRatio() * 100));
+        }
+    }
+
+    @Override
+    @NotNull
+    public String getAlias() {
+        return "stats";
+    }
+}
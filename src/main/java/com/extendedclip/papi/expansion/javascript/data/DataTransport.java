@@ -0,0 +1,42 @@
+package com.extendedclip.papi.expansion.javascript.data;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Store shared by every server of a network. Script data is kept in one hash per script, fields
+ * are data keys and values their encoded form. Changes are announced on a channel so the other
+ * servers can update their local copies.
+ */
+public interface DataTransport {
+
+    void connect() throws IOException;
+
+    Map<String, String> getAll(String hash) throws IOException;
+
+    /**
+     * @return the values of the given fields, fields which are not set are missing
+     */
+    Map<String, String> get(String hash, Collection<String> fields) throws IOException;
+
+    /**
+     * Writes a batch of changes at once.
+     */
+    void write(String hash, Map<String, String> values, Collection<String> removed) throws IOException;
+
+    long incrementBy(String hash, String field, long delta) throws IOException;
+
+    double incrementBy(String hash, String field, double delta) throws IOException;
+
+    void publish(String channel, String message) throws IOException;
+
+    /**
+     * Delivers every message published on the channel, including the ones of this server, until
+     * the transport is closed.
+     */
+    void subscribe(String channel, Consumer<String> listener) throws IOException;
+
+    void close();
+}
@@ -0,0 +1,97 @@
+package com.extendedclip.papi.expansion.javascript.data;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * In-memory stand-in for a shared store, shared by every transport of the same JVM. Lets shared
+ * data be tried out on a single server, or several expansions be pointed at each other while
+ * testing, without running Redis.
+ */
+public class LocalTransport implements DataTransport {
+
+    private static final Map<String, Map<String, String>> HASHES = new ConcurrentHashMap<>();
+    private static final Map<String, List<Consumer<String>>> CHANNELS = new ConcurrentHashMap<>();
+
+    private final Map<String, Consumer<String>> subscriptions = new HashMap<>();
+
+    @Override
+    public void connect() throws IOException {
+    }
+
+    @Override
+    public Map<String, String> getAll(String hash) {
+        return new HashMap<>(hash(hash));
+    }
+
+    @Override
+    public Map<String, String> get(String hash, Collection<String> fields) {
+        final Map<String, String> values = hash(hash);
+        final Map<String, String> found = new HashMap<>();
+
+        fields.forEach(field -> {
+            final String value = values.get(field);
+
+            if (value != null) {
+                found.put(field, value);
+            }
+        });
+        return found;
+    }
+
+    @Override
+    public void write(String hash, Map<String, String> values, Collection<String> removed) {
+        final Map<String, String> fields = hash(hash);
+
+        synchronized (fields) {
+            fields.putAll(values);
+            removed.forEach(fields::remove);
+        }
+    }
+
+    @Override
+    public long incrementBy(String hash, String field, long delta) {
+        final Map<String, String> fields = hash(hash);
+
+        synchronized (fields) {
+            final long value = Long.parseLong(fields.getOrDefault(field, "0")) + delta;
+            fields.put(field, Long.toString(value));
+            return value;
+        }
+    }
+
+    @Override
+    public double incrementBy(String hash, String field, double delta) {
+        final Map<String, String> fields = hash(hash);
+
+        synchronized (fields) {
+            final double value = Double.parseDouble(fields.getOrDefault(field, "0")) + delta;
+            fields.put(field, Double.toString(value));
+            return value;
+        }
+    }
+
+    @Override
+    public void publish(String channel, String message) {
+        CHANNELS.getOrDefault(channel, Collections.emptyList()).forEach(listener -> listener.accept(message));
+    }
+
+    @Override
+    public synchronized void subscribe(String channel, Consumer<String> listener) {
+        CHANNELS.computeIfAbsent(channel, key -> new CopyOnWriteArrayList<>()).add(listener);
+        subscriptions.put(channel, listener);
+    }
+
+    @Override
+    public synchronized void close() {
+        subscriptions.forEach((channel, listener) -> CHANNELS.getOrDefault(channel, Collections.emptyList()).remove(listener));
+        subscriptions.clear();
+    }
+
+    private static Map<String, String> hash(String hash) {
+        return HASHES.computeIfAbsent(hash, key -> new ConcurrentHashMap<>());
+    }
+}
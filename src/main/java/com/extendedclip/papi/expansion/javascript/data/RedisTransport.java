@@ -0,0 +1,342 @@
+package com.extendedclip.papi.expansion.javascript.data;
+
+import com.extendedclip.papi.expansion.javascript.ExpansionUtils;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Minimal client for the Redis protocol (RESP), covering the few commands shared data needs.
+ * Commands go through one connection, subscriptions get a connection and thread of their own
+ * which reconnects when the server goes away.
+ */
+public class RedisTransport implements DataTransport {
+
+    private static final int CONNECT_TIMEOUT = 2000;
+    private static final int READ_TIMEOUT = 5000;
+    private static final long RECONNECT_DELAY = TimeUnit.SECONDS.toMillis(5);
+
+    private final String host;
+    private final int port;
+    private final String password;
+    private final List<Thread> subscribers = new ArrayList<>();
+    // Blocked in a read without timeout, only closing the socket stops them
+    private final List<Connection> subscriptions = new ArrayList<>();
+    private Connection connection;
+    private volatile boolean closed;
+
+    public RedisTransport(String host, int port, String password) {
+        this.host = host;
+        this.port = port;
+        this.password = password == null || password.isEmpty() ? null : password;
+    }
+
+    @Override
+    public synchronized void connect() throws IOException {
+        if (connection == null) {
+            connection = open(READ_TIMEOUT);
+        }
+    }
+
+    @Override
+    public Map<String, String> getAll(String hash) throws IOException {
+        final List<?> reply = (List<?>) command("HGETALL", hash);
+        final Map<String, String> values = new HashMap<>();
+
+        for (int i = 0; i + 1 < reply.size(); i += 2) {
+            values.put((String) reply.get(i), (String) reply.get(i + 1));
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, String> get(String hash, Collection<String> fields) throws IOException {
+        final Map<String, String> values = new HashMap<>();
+
+        if (fields.isEmpty()) {
+            return values;
+        }
+
+        final List<String> args = new ArrayList<>(fields.size() + 2);
+        args.add("HMGET");
+        args.add(hash);
+        args.addAll(fields);
+
+        final List<?> reply = (List<?>) command(args.toArray(new String[0]));
+        for (int i = 0; i < reply.size(); i++) {
+            if (reply.get(i) != null) {
+                values.put(args.get(i + 2), (String) reply.get(i));
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void write(String hash, Map<String, String> values, Collection<String> removed) throws IOException {
+        final List<String[]> commands = new ArrayList<>(2);
+
+        if (!values.isEmpty()) {
+            final List<String> args = new ArrayList<>(values.size() * 2 + 2);
+            args.add("HSET");
+            args.add(hash);
+            values.forEach((field, value) -> {
+                args.add(field);
+                args.add(value);
+            });
+            commands.add(args.toArray(new String[0]));
+        }
+
+        if (!removed.isEmpty()) {
+            final List<String> args = new ArrayList<>(removed.size() + 2);
+            args.add("HDEL");
+            args.add(hash);
+            args.addAll(removed);
+            commands.add(args.toArray(new String[0]));
+        }
+
+        if (!commands.isEmpty()) {
+            pipeline(commands);
+        }
+    }
+
+    @Override
+    public long incrementBy(String hash, String field, long delta) throws IOException {
+        return (Long) command("HINCRBY", hash, field, Long.toString(delta));
+    }
+
+    @Override
+    public double incrementBy(String hash, String field, double delta) throws IOException {
+        return Double.parseDouble((String) command("HINCRBYFLOAT", hash, field, Double.toString(delta)));
+    }
+
+    @Override
+    public void publish(String channel, String message) throws IOException {
+        command("PUBLISH", channel, message);
+    }
+
+    @Override
+    public synchronized void subscribe(String channel, Consumer<String> listener) {
+        final Thread thread = new Thread(() -> listen(channel, listener), "Javascript-Expansion redis subscriber");
+        thread.setDaemon(true);
+        thread.start();
+        subscribers.add(thread);
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        subscribers.forEach(Thread::interrupt);
+        subscribers.clear();
+        subscriptions.forEach(Connection::close);
+        subscriptions.clear();
+
+        if (connection != null) {
+            connection.close();
+            connection = null;
+        }
+    }
+
+    private synchronized Object command(String... args) throws IOException {
+        return pipeline(Collections.singletonList(args)).get(0);
+    }
+
+    private synchronized List<Object> pipeline(List<String[]> commands) throws IOException {
+        if (closed) {
+            throw new IOException("Transport is closed");
+        }
+
+        connect();
+        try {
+            for (String[] command : commands) {
+                connection.write(command);
+            }
+            connection.out.flush();
+
+            final List<Object> replies = new ArrayList<>(commands.size());
+            for (int i = 0; i < commands.size(); i++) {
+                replies.add(connection.read());
+            }
+            return replies;
+        } catch (IOException ex) {
+            // The stream state is unknown after a failure, the next command reconnects
+            connection.close();
+            connection = null;
+            throw ex;
+        }
+    }
+
+    private void listen(String channel, Consumer<String> listener) {
+        while (!closed) {
+            // Blocks until a message arrives, so no read timeout
+            try (Connection subscription = open(0)) {
+                if (!track(subscription)) {
+                    return;
+                }
+
+                try {
+                    subscription.write(new String[]{"SUBSCRIBE", channel});
+                    subscription.out.flush();
+
+                    while (true) {
+                        final Object reply = subscription.read();
+
+                        // Closed while reading, the store is detached already
+                        if (closed) {
+                            return;
+                        }
+
+                        if (reply instanceof List && ((List<?>) reply).size() == 3 && "message".equals(((List<?>) reply).get(0))) {
+                            listener.accept((String) ((List<?>) reply).get(2));
+                        }
+                    }
+                } finally {
+                    untrack(subscription);
+                }
+            } catch (IOException ex) {
+                if (closed) {
+                    return;
+                }
+                ExpansionUtils.warnLog("Lost the shared data subscription (" + ex.getMessage() + "), reconnecting", null);
+            }
+
+            try {
+                Thread.sleep(RECONNECT_DELAY);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return false if the transport was closed meanwhile, the connection is not used then
+     */
+    private synchronized boolean track(Connection subscription) {
+        if (closed) {
+            return false;
+        }
+        subscriptions.add(subscription);
+        return true;
+    }
+
+    private synchronized void untrack(Connection subscription) {
+        subscriptions.remove(subscription);
+    }
+
+    private Connection open(int readTimeout) throws IOException {
+        final Socket socket = new Socket();
+        socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+        socket.setSoTimeout(readTimeout);
+        socket.setTcpNoDelay(true);
+
+        final Connection connection = new Connection(socket);
+
+        if (password != null) {
+            try {
+                connection.write(new String[]{"AUTH", password});
+                connection.out.flush();
+                connection.read();
+            } catch (IOException ex) {
+                connection.close();
+                throw ex;
+            }
+        }
+        return connection;
+    }
+
+    private static final class Connection implements Closeable {
+
+        private final Socket socket;
+        private final DataInputStream in;
+        private final OutputStream out;
+
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+        }
+
+        private void write(String[] command) throws IOException {
+            out.write(('*' + Integer.toString(command.length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+
+            for (String arg : command) {
+                final byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+                out.write(('$' + Integer.toString(bytes.length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+                out.write(bytes);
+                out.write('\r');
+                out.write('\n');
+            }
+        }
+
+        private Object read() throws IOException {
+            final int type = in.read();
+
+            if (type == -1) {
+                throw new EOFException("Connection closed by the server");
+            }
+
+            final String line = readLine();
+            switch (type) {
+                case '+':
+                    return line;
+                case '-':
+                    throw new IOException(line);
+                case ':':
+                    return Long.parseLong(line);
+                case '$': {
+                    final int length = Integer.parseInt(line);
+
+                    if (length < 0) {
+                        return null;
+                    }
+
+                    final byte[] bytes = new byte[length];
+                    in.readFully(bytes);
+                    readLine();
+                    return new String(bytes, StandardCharsets.UTF_8);
+                }
+                case '*': {
+                    final int length = Integer.parseInt(line);
+
+                    if (length < 0) {
+                        return null;
+                    }
+
+                    final List<Object> elements = new ArrayList<>(length);
+                    for (int i = 0; i < length; i++) {
+                        elements.add(read());
+                    }
+                    return elements;
+                }
+                default:
+                    throw new IOException("Unexpected reply type '" + (char) type + "'");
+            }
+        }
+
+        private String readLine() throws IOException {
+            final StringBuilder builder = new StringBuilder();
+            int b;
+
+            while ((b = in.read()) != '\r') {
+                if (b == -1) {
+                    throw new EOFException("Connection closed by the server");
+                }
+                builder.append((char) b);
+            }
+            in.read();
+            return builder.toString();
+        }
+
+        @Override
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.extendedclip.papi.expansion.javascript.data;
+
+/**
+ * Receives the changes a script makes to its shared data, after they were applied locally.
+ */
+public interface Replication {
+
+    void set(String key, Object value);
+
+    void remove(String key);
+
+    void increment(String key, long delta);
+
+    void increment(String key, double delta);
+
+    /**
+     * Reads every shared entry again in the background, e.g. after changes of other servers had
+     * to be dropped. The entries replace the local ones once read.
+     */
+    void reload();
+}
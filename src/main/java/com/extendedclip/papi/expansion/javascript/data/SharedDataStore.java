@@ -0,0 +1,541 @@
+package com.extendedclip.papi.expansion.javascript.data;
+
+import com.extendedclip.papi.expansion.javascript.ExpansionUtils;
+import com.extendedclip.papi.expansion.javascript.ScriptData;
+import com.google.gson.*;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares the data of the scripts which opt in between servers. Every server keeps the data in
+ * memory as before, reads never leave the server. Changes are queued and written to the
+ * transport in batches, then the changed keys are published so the other servers read them
+ * again. Counters are added up by the store itself, concurrent increments of several servers add up.
+ * <p>
+ * Values are stored as JSON, which is also the form of numbers the store can increment.
+ */
+public class SharedDataStore {
+
+    private static final String HASH_PREFIX = "javascript:data:";
+    private static final String CHANNEL = "javascript:data";
+    private static final long RELOAD_RETRY_DELAY = TimeUnit.SECONDS.toMillis(5);
+
+    private final DataTransport transport;
+    private final long flushInterval;
+    private final String node = UUID.randomUUID().toString();
+    private final Map<String, Namespace> namespaces = new ConcurrentHashMap<>();
+    private final Gson gson = new Gson();
+    private volatile ScheduledExecutorService executor;
+    private volatile boolean failing;
+
+    public SharedDataStore(DataTransport transport, long flushInterval) {
+        this.transport = transport;
+        this.flushInterval = Math.max(10, flushInterval);
+    }
+
+    public void start() {
+        if (executor != null) {
+            return;
+        }
+
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "Javascript-Expansion shared data");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Loads waiting for a retry are dropped on stop
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.executor = executor;
+
+        // Subscribed either way, the subscription connects and retries on its own
+        try {
+            transport.subscribe(CHANNEL, this::receive);
+        } catch (IOException ex) {
+            ExpansionUtils.errorLog("Could not subscribe to the changes of the other servers: " + ex.getMessage(), null);
+        }
+
+        try {
+            transport.connect();
+        } catch (IOException ex) {
+            // Changes are kept and written once the store is reachable
+            ExpansionUtils.errorLog("Could not connect to the shared data store: " + ex.getMessage(), null);
+        }
+
+        executor.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes the queued changes and disconnects.
+     */
+    public void stop() {
+        if (executor == null) {
+            return;
+        }
+
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+
+        flush();
+        transport.close();
+        executor = null;
+    }
+
+    /**
+     * Replicates the changes made to the data of a script. Changes still queued for a previous
+     * instance of the script, e.g. before a reload, are kept.
+     */
+    public void attach(String identifier, ScriptData data) {
+        final Namespace namespace = namespaces.computeIfAbsent(identifier, Namespace::new);
+        namespace.data = data;
+        data.setReplication(namespace);
+    }
+
+    public void detach(String identifier, ScriptData data) {
+        final Namespace namespace = namespaces.get(identifier);
+
+        if (namespace != null && namespace.data == data) {
+            namespace.data = null;
+        }
+        data.setReplication(null);
+    }
+
+    /**
+     * Reads the shared entries of an attached script in the background, requests meanwhile use
+     * its local entries. Once read they replace the local ones. A script shared for the first
+     * time copies its local entries to the store instead.
+     */
+    public void load(String identifier) {
+        final Namespace namespace = namespaces.get(identifier);
+
+        if (namespace != null) {
+            namespace.reload();
+        }
+    }
+
+    private synchronized void flush() {
+        try {
+            for (Namespace namespace : namespaces.values()) {
+                namespace.flush();
+            }
+
+            if (failing) {
+                failing = false;
+                ExpansionUtils.infoLog("Reconnected to the shared data store");
+            }
+        } catch (IOException | RuntimeException ex) {
+            // Logged once per outage, the changes are retried on the next flush
+            if (!failing) {
+                failing = true;
+                ExpansionUtils.errorLog("Could not write shared data, retrying: " + ex.getMessage(), null);
+            }
+        }
+    }
+
+    private void receive(String message) {
+        final JsonObject json;
+        try {
+            json = gson.fromJson(message, JsonObject.class);
+        } catch (JsonParseException ex) {
+            return;
+        }
+
+        if (json == null || node.equals(string(json, "node")) || !(json.get("keys") instanceof JsonArray)) {
+            return;
+        }
+
+        final Namespace namespace = namespaces.get(string(json, "id"));
+
+        if (namespace == null) {
+            return;
+        }
+
+        final List<String> keys = new ArrayList<>();
+        json.getAsJsonArray("keys").forEach(key -> keys.add(key.getAsString()));
+
+        try {
+            namespace.refresh(keys);
+        } catch (IOException ex) {
+            ExpansionUtils.warnLog("Could not read the shared data of '" + namespace.identifier + "' changed by another server: " + ex.getMessage(), null);
+        }
+    }
+
+    private static String string(JsonObject json, String member) {
+        final JsonElement element = json.get(member);
+        return element == null || !element.isJsonPrimitive() ? null : element.getAsString();
+    }
+
+    private String encode(Object value) {
+        return gson.toJson(toJson(value));
+    }
+
+    private static JsonElement toJson(Object value) {
+        if (value == null) {
+            return JsonNull.INSTANCE;
+        }
+
+        if (value instanceof Number) {
+            return new JsonPrimitive((Number) value);
+        }
+
+        if (value instanceof Boolean) {
+            return new JsonPrimitive((Boolean) value);
+        }
+
+        if (value instanceof Map) {
+            final JsonObject object = new JsonObject();
+            ((Map<?, ?>) value).forEach((key, entry) -> object.add(String.valueOf(key), toJson(entry)));
+            return object;
+        }
+
+        if (value instanceof Iterable) {
+            final JsonArray array = new JsonArray();
+            ((Iterable<?>) value).forEach(entry -> array.add(toJson(entry)));
+            return array;
+        }
+        return new JsonPrimitive(String.valueOf(value));
+    }
+
+    /**
+     * @return the value as the YAML loader would have read it, or the text itself if another
+     * client stored something which is not JSON
+     */
+    private Object decode(String value) {
+        try {
+            final JsonElement element = gson.fromJson(value, JsonElement.class);
+            return element == null ? value : fromJson(element);
+        } catch (JsonParseException ex) {
+            return value;
+        }
+    }
+
+    private static Object fromJson(JsonElement element) {
+        if (element.isJsonObject()) {
+            final Map<String, Object> map = new LinkedHashMap<>();
+            element.getAsJsonObject().entrySet().forEach(entry -> map.put(entry.getKey(), fromJson(entry.getValue())));
+            return map;
+        }
+
+        if (element.isJsonArray()) {
+            final List<Object> list = new ArrayList<>();
+            element.getAsJsonArray().forEach(entry -> list.add(fromJson(entry)));
+            return list;
+        }
+
+        if (element.isJsonNull()) {
+            return null;
+        }
+
+        final JsonPrimitive primitive = element.getAsJsonPrimitive();
+
+        if (primitive.isBoolean()) {
+            return primitive.getAsBoolean();
+        }
+
+        if (primitive.isNumber()) {
+            final String number = primitive.getAsString();
+            try {
+                return Long.parseLong(number);
+            } catch (NumberFormatException ex) {
+                return Double.parseDouble(number);
+            }
+        }
+        return primitive.getAsString();
+    }
+
+    /**
+     * Queued changes of one script. Written to by the thread holding the script's context,
+     * drained by the flush thread. Flushing and reading changes of other servers are done one
+     * at a time, so the latest value read from the store is the one applied last.
+     */
+    private final class Namespace implements Replication {
+
+        private final String identifier;
+        private final String hash;
+        private final Map<String, String> values = new ConcurrentHashMap<>();
+        private final Set<String> removed = ConcurrentHashMap.newKeySet();
+        private final Map<String, AtomicLong> longs = new ConcurrentHashMap<>();
+        // Raw bits of the pending double increments
+        private final Map<String, AtomicLong> doubles = new ConcurrentHashMap<>();
+        private volatile ScriptData data;
+
+        private Namespace(String identifier) {
+            this.identifier = identifier;
+            this.hash = HASH_PREFIX + identifier;
+        }
+
+        @Override
+        public void set(String key, Object value) {
+            if (value == null) {
+                remove(key);
+                return;
+            }
+
+            // Encoded right away, script objects can not be read once their context is closed
+            removed.remove(key);
+            values.put(key, encode(value));
+            discardIncrements(key);
+        }
+
+        @Override
+        public void remove(String key) {
+            values.remove(key);
+            removed.add(key);
+            discardIncrements(key);
+        }
+
+        @Override
+        public void increment(String key, long delta) {
+            longs.computeIfAbsent(key, k -> new AtomicLong()).addAndGet(delta);
+        }
+
+        @Override
+        public void increment(String key, double delta) {
+            final AtomicLong pending = doubles.computeIfAbsent(key, k -> new AtomicLong());
+
+            while (true) {
+                final long bits = pending.get();
+
+                if (pending.compareAndSet(bits, Double.doubleToRawLongBits(Double.longBitsToDouble(bits) + delta))) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void reload() {
+            reload(0);
+        }
+
+        private void reload(int attempt) {
+            final ScheduledExecutorService executor = SharedDataStore.this.executor;
+
+            // Stopped, the script is being unloaded
+            if (executor == null || data == null) {
+                return;
+            }
+
+            try {
+                executor.schedule(() -> {
+                    try {
+                        load();
+                    } catch (IOException | RuntimeException ex) {
+                        if (attempt == 0) {
+                            ExpansionUtils.errorLog("Could not load the shared data of '" + identifier + "', using its data file until the store is reachable: " + ex.getMessage(), null);
+                        }
+                        reload(attempt + 1);
+                    }
+                }, attempt == 0 ? 0 : RELOAD_RETRY_DELAY, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ignored) {
+            }
+        }
+
+        /**
+         * Reads every entry of the store, on the store thread so requests never wait for it.
+         */
+        private void load() throws IOException {
+            // Written first, the entries read then include the changes of this server
+            flush();
+
+            final Map<String, String> seeded = new HashMap<>();
+
+            synchronized (this) {
+                final ScriptData data = this.data;
+
+                if (data == null) {
+                    return;
+                }
+
+                final Map<String, String> stored = transport.getAll(hash);
+
+                if (stored.isEmpty()) {
+                    // Shared for the first time, the local entries become the shared ones
+                    data.snapshot().forEach((key, value) -> seeded.put(key, encode(value)));
+                    transport.write(hash, seeded, Collections.emptyList());
+                } else {
+                    final Map<String, Object> entries = new HashMap<>();
+                    stored.forEach((key, value) -> {
+                        if (!isPending(key)) {
+                            entries.put(key, withPending(key, decode(value)));
+                        }
+                    });
+
+                    // Changed since the flush above, the local value is written next
+                    final Set<String> kept = new HashSet<>(values.keySet());
+                    kept.addAll(removed);
+                    data.replaceRemote(entries, kept);
+                }
+            }
+
+            // Servers which read the empty store meanwhile read the seeded entries
+            publish(seeded.keySet());
+        }
+
+        private boolean isPending(String key) {
+            return values.containsKey(key) || removed.contains(key);
+        }
+
+        private long pendingLong(String key) {
+            final AtomicLong pending = longs.get(key);
+            return pending == null ? 0 : pending.get();
+        }
+
+        private double pendingDouble(String key) {
+            final AtomicLong pending = doubles.get(key);
+            return pending == null ? 0 : Double.longBitsToDouble(pending.get());
+        }
+
+        private void discardIncrements(String key) {
+            final AtomicLong pendingLong = longs.get(key);
+            final AtomicLong pendingDouble = doubles.get(key);
+
+            if (pendingLong != null) {
+                pendingLong.set(0);
+            }
+            if (pendingDouble != null) {
+                pendingDouble.set(0);
+            }
+        }
+
+        private void flush() throws IOException {
+            final Set<String> changed = new HashSet<>();
+
+            synchronized (this) {
+                final Map<String, String> written = new HashMap<>();
+                final List<String> deleted = new ArrayList<>();
+
+                for (String key : values.keySet()) {
+                    final String value = values.remove(key);
+
+                    if (value != null) {
+                        written.put(key, value);
+                    }
+                }
+                for (String key : removed) {
+                    if (removed.remove(key)) {
+                        deleted.add(key);
+                    }
+                }
+
+                // Values first, a key migrated to a counter is rewritten as a number before it is incremented
+                if (!written.isEmpty() || !deleted.isEmpty()) {
+                    try {
+                        transport.write(hash, written, deleted);
+                    } catch (IOException ex) {
+                        written.forEach(values::putIfAbsent);
+                        deleted.stream().filter(key -> !values.containsKey(key)).forEach(removed::add);
+                        throw ex;
+                    }
+                    changed.addAll(written.keySet());
+                    changed.addAll(deleted);
+                }
+
+                final Map<String, Object> totals = new HashMap<>();
+                try {
+                    for (Map.Entry<String, AtomicLong> entry : longs.entrySet()) {
+                        final long delta = entry.getValue().getAndSet(0);
+
+                        if (delta == 0) {
+                            continue;
+                        }
+
+                        try {
+                            totals.put(entry.getKey(), transport.incrementBy(hash, entry.getKey(), delta));
+                        } catch (IOException ex) {
+                            entry.getValue().addAndGet(delta);
+                            throw ex;
+                        }
+                    }
+
+                    for (Map.Entry<String, AtomicLong> entry : doubles.entrySet()) {
+                        final double delta = Double.longBitsToDouble(entry.getValue().getAndSet(0));
+
+                        if (delta == 0) {
+                            continue;
+                        }
+
+                        try {
+                            totals.put(entry.getKey(), transport.incrementBy(hash, entry.getKey(), delta));
+                        } catch (IOException ex) {
+                            increment(entry.getKey(), delta);
+                            throw ex;
+                        }
+                    }
+                } finally {
+                    // The totals include the increments of the other servers
+                    totals.forEach(this::apply);
+                    changed.addAll(totals.keySet());
+                }
+            }
+
+            // Outside of the lock, a local transport delivers to the other stores right away
+            publish(changed);
+        }
+
+        /**
+         * Reads keys changed by another server again. Keys this server changed since its last
+         * flush keep the local value, it is written next.
+         */
+        private synchronized void refresh(List<String> keys) throws IOException {
+            if (data == null) {
+                return;
+            }
+
+            keys.removeIf(this::isPending);
+            final Map<String, String> current = transport.get(hash, keys);
+
+            for (String key : keys) {
+                final String value = current.get(key);
+                apply(key, value == null ? null : decode(value));
+            }
+        }
+
+        private void apply(String key, Object value) {
+            final ScriptData data = this.data;
+
+            if (data != null) {
+                data.applyRemote(key, withPending(key, value));
+            }
+        }
+
+        /**
+         * @return the value with the increments of this server which are not written yet added
+         * on top of the shared total
+         */
+        private Object withPending(String key, Object value) {
+            final long pendingLong = pendingLong(key);
+            final double pendingDouble = pendingDouble(key);
+
+            if (value instanceof Long && pendingDouble == 0) {
+                return (Long) value + pendingLong;
+            }
+
+            if (value instanceof Number) {
+                return ((Number) value).doubleValue() + pendingLong + pendingDouble;
+            }
+            return value;
+        }
+
+        private void publish(Set<String> keys) throws IOException {
+            if (keys.isEmpty()) {
+                return;
+            }
+
+            final JsonObject message = new JsonObject();
+            message.addProperty("node", node);
+            message.addProperty("id", identifier);
+            message.add("keys", toJson(keys));
+            transport.publish(CHANNEL, gson.toJson(message));
+        }
+    }
+}
@@ -4,6 +4,6 @@ public enum LogEnum {
 
     FAILED_SPEC, FAILED_CREATE, FAILED_PLACEHOLDER,
     EMPTY_FILE, SUCCESSFUL_FILE,
-    LOADED_DATA, LOADED_PLACEHOLDER
+    LOADED_PLACEHOLDER
 
 }
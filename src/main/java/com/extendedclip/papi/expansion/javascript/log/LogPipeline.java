@@ -0,0 +1,211 @@
+package com.extendedclip.papi.expansion.javascript.log;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded queue of log records written to the server logger by a background thread, so logging
+ * from placeholder requests never waits on console I/O. Records keep their order. A record
+ * repeated within 30 seconds of its first write is only counted, also when other records were
+ * logged in between, and the count is printed once that window ends. Records offered while the
+ * queue is full are dropped and counted.
+ */
+public class LogPipeline {
+
+    private static final int CAPACITY = 1024;
+    private static final long REPEAT_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+    private static final int MAX_TRACKED = 256;
+
+    private final Logger logger;
+    private final String prefix;
+    private final BlockingQueue<LogRecord> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean running;
+    private Thread worker;
+
+    // Only touched by the worker thread, records written in the current window by message
+    private final Map<String, Repeats> written = new LinkedHashMap<String, Repeats>(16, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Repeats> eldest) {
+            if (size() > MAX_TRACKED) {
+                flush(eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    };
+
+    public LogPipeline(Logger logger, String prefix) {
+        this.logger = logger;
+        this.prefix = prefix;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+
+        running = true;
+        worker = new Thread(this::run, "Javascript-Expansion logger");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Stops the worker once every queued record has been written.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(2));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        worker = null;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return false if the record was dropped because the queue is full or the pipeline is stopped
+     */
+    public boolean offer(Level level, String message, Throwable throwable) {
+        if (!running) {
+            return false;
+        }
+
+        if (!queue.offer(new LogRecord(level, message, throwable))) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private void run() {
+        while (running || !queue.isEmpty()) {
+            final LogRecord record;
+
+            try {
+                record = running ? queue.poll(1, TimeUnit.SECONDS) : queue.poll();
+            } catch (InterruptedException e) {
+                continue;
+            }
+
+            flushRepeats(false);
+            reportDropped();
+
+            if (record == null) {
+                continue;
+            }
+
+            final Repeats repeats = written.get(record.key());
+
+            if (repeats != null) {
+                repeats.count++;
+                continue;
+            }
+
+            write(record);
+            written.put(record.key(), new Repeats(record, System.currentTimeMillis()));
+        }
+
+        flushRepeats(true);
+        reportDropped();
+    }
+
+    private void write(LogRecord record) {
+        if (record.throwable == null) {
+            logger.log(record.level, record.message);
+        } else {
+            logger.log(record.level, record.message, record.throwable);
+        }
+    }
+
+    /**
+     * Ends the windows which are over, or all of them, printing how often their record was repeated.
+     */
+    private void flushRepeats(boolean all) {
+        final long now = System.currentTimeMillis();
+        final Iterator<Repeats> iterator = written.values().iterator();
+
+        while (iterator.hasNext()) {
+            final Repeats repeats = iterator.next();
+
+            // Insertion order, the windows after this one started later
+            if (!all && now - repeats.since < REPEAT_INTERVAL) {
+                break;
+            }
+
+            flush(repeats);
+            iterator.remove();
+        }
+    }
+
+    private void flush(Repeats repeats) {
+        if (repeats.count == 0) {
+            return;
+        }
+
+        final String message = String.valueOf(repeats.record.message);
+        logger.log(repeats.record.level, prefix + "Repeated " + repeats.count + " more time" + (repeats.count > 1 ? "s" : "")
+                + " within " + TimeUnit.MILLISECONDS.toSeconds(REPEAT_INTERVAL) + "s: " + (message.startsWith(prefix) ? message.substring(prefix.length()) : message));
+    }
+
+    private void reportDropped() {
+        final long amount = dropped.getAndSet(0);
+
+        if (amount > 0) {
+            logger.log(Level.WARNING, prefix + amount + " log message" + (amount > 1 ? "s were" : " was") + " dropped, the log queue was full");
+        }
+    }
+
+    private static final class LogRecord {
+
+        private final Level level;
+        private final String message;
+        private final Throwable throwable;
+
+        private LogRecord(Level level, String message, Throwable throwable) {
+            this.level = level;
+            this.message = message;
+            this.throwable = throwable;
+        }
+
+        /**
+         * @return what makes two records repeats of each other, their level, message and error
+         */
+        private String key() {
+            return level.getName() + '\0' + message + (throwable == null ? "" : '\0' + throwable.toString());
+        }
+    }
+
+    private static final class Repeats {
+
+        private final LogRecord record;
+        private final long since;
+        private int count;
+
+        private Repeats(LogRecord record, long since) {
+            this.record = record;
+            this.since = since;
+        }
+    }
+}
@@ -15,6 +15,10 @@ public class LogStatus {
         logs.get(logEnum).add(s);
     }
 
+    public void clear() {
+        logs.clear();
+    }
+
     public List<String> pull(LogEnum logEnum) {
         return logs.get(logEnum) == null ? Collections.emptyList() : logs.get(logEnum);
     }
@@ -9,6 +9,7 @@ import org.bukkit.configuration.file.YamlConfiguration;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Locale;
 
 public class ConfigManager {
 
@@ -37,6 +38,10 @@ public class ConfigManager {
                 + "\nJavascript files must be located in the:"
                 + "\n /plugins/placeholderapi/javascripts/ folder"
                 + "\n"
+                + "\nShared helper modules can be placed in the:"
+                + "\n /plugins/placeholderapi/javascripts/lib/ folder"
+                + "\nand loaded from any script with: var helpers = require('./<name>.js');"
+                + "\n"
                 + "\nA detailed guide on how to create your own javascript placeholders"
                 + "\ncan be found here:"
                 + "\nhttps://github.com/PlaceholderAPI-Expansions/Javascript-Expansion/wiki"
@@ -52,7 +57,11 @@ public class ConfigManager {
                 + "\nExample:"
                 + "\n"
                 + "\n'my_placeholder':"
-                + "\n  file: 'my_placeholder.js'");
+                + "\n  file: 'my_placeholder.js'"
+                + "\n"
+                + "\nFurther options of a placeholder, e.g. functions, arguments or caching, are"
+                + "\ndescribed in the README:"
+                + "\nhttps://github.com/PlaceholderAPI-Expansions/Javascript-Expansion#script-options");
 
         if (config.getKeys(false).isEmpty()) {
             config.set("example.file", "example.js");
@@ -113,6 +122,70 @@ public class ConfigManager {
         return (boolean) exp.get("debug", false);
     }
 
+    public long getParseTimeout() {
+        return exp.getLong("parse_command_timeout", 5000);
+    }
+
+    public int getDataSoftLimit() {
+        return exp.getInt("data_soft_limit", 0);
+    }
+
+    public int getDataHardLimit() {
+        return exp.getInt("data_hard_limit", 0);
+    }
+
+    /**
+     * @return the milliseconds scripts may spend on the main thread per tick, 0 if unlimited
+     */
+    public double getTickBudget() {
+        return exp.getDouble("tick_budget_ms", 0);
+    }
+
+    /**
+     * @return the seconds after which an unused script context is closed, 0 if never
+     */
+    public long getContextIdleTimeout() {
+        return exp.getLong("context_idle_timeout", 0);
+    }
+
+    public boolean dataPrefetchEnabled() {
+        return (boolean) exp.get("data_prefetch", false);
+    }
+
+    public boolean metricsEnabled() {
+        return (boolean) exp.get("metrics_enabled", false);
+    }
+
+    public int getMetricsPort() {
+        return exp.getInt("metrics_port", 9465);
+    }
+
+    /**
+     * @return none, redis or local
+     */
+    public String getSharedDataTransport() {
+        return exp.getString("shared_data_transport", "none").toLowerCase(Locale.ROOT);
+    }
+
+    public String getSharedDataRedisHost() {
+        return exp.getString("shared_data_redis_host", "127.0.0.1");
+    }
+
+    public int getSharedDataRedisPort() {
+        return exp.getInt("shared_data_redis_port", 6379);
+    }
+
+    public String getSharedDataRedisPassword() {
+        return exp.getString("shared_data_redis_password", "");
+    }
+
+    /**
+     * @return the milliseconds between two writes of the queued shared data changes
+     */
+    public long getSharedDataFlushInterval() {
+        return exp.getLong("shared_data_flush_interval", 100);
+    }
+
     public boolean gitDownloadEnabled() {
         return (boolean) exp.get("github_script_downloads", false);
     }
@@ -0,0 +1,125 @@
+package com.extendedclip.papi.expansion.javascript.manager;
+
+import com.extendedclip.papi.expansion.javascript.ExpansionUtils;
+import me.clip.placeholderapi.PlaceholderAPIPlugin;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.HostAccess;
+import org.graalvm.polyglot.Language;
+
+import java.io.File;
+
+public class EngineManager {
+
+    private static final String INTERPRETED = "Interpreted";
+    private static final String RUNTIME_OPTIMIZATION = "https://www.graalvm.org/latest/reference-manual/embed-languages/#runtime-optimization-support";
+
+    private Engine engine;
+    private boolean optimized;
+
+    public Engine getEngine() {
+        if (engine == null) {
+            create();
+        }
+        return engine;
+    }
+
+    /**
+     * Creates the engine shared by every script context. The Truffle runtime is chosen when the
+     * engine is built: the optimizing runtime when the jar ships one and the JVM supports it,
+     * otherwise the interpreter fallback. A stock HotSpot JDK lacks the Graal compiler and always
+     * gets the interpreter.
+     */
+    public void create() {
+        if (engine != null) {
+            return;
+        }
+
+        try {
+            // Newer runtimes print their own interpreter-only warning, we report it below instead
+            engine = Engine.newBuilder()
+                    .option("engine.WarnInterpreterOnly", "false")
+                    .build();
+        } catch (IllegalArgumentException ex) {
+            // 20.3 does not know the option
+            engine = Engine.create();
+        }
+
+        optimized = !INTERPRETED.equalsIgnoreCase(engine.getImplementationName());
+
+        if (optimized) {
+            ExpansionUtils.infoLog("Using the " + engine.getImplementationName() + " runtime, scripts will be compiled.");
+            return;
+        }
+
+        ExpansionUtils.warnLog("Scripts run in interpreter-only mode on this JVM, expect slower placeholders.", null);
+        // Shading the runtime is not enough, the compiler comes from the JVM through JVMCI
+        final boolean legacy = engine.getVersion().startsWith("20.");
+        if (legacy && getJavaVersion() >= 17) {
+            ExpansionUtils.warnLog("This server runs Java " + getJavaVersion() + ", the -jdk17 build of the expansion can compile scripts on a JVM which provides JVMCI and the Graal compiler.", null);
+        } else if (!legacy) {
+            ExpansionUtils.warnLog("Scripts are only compiled on a JVM which provides JVMCI and the Graal compiler, see " + RUNTIME_OPTIMIZATION, null);
+        }
+    }
+
+    public Context createContext() {
+        final File libDirectory = new File(PlaceholderAPIPlugin.getInstance().getDataFolder(), "javascripts" + File.separator + "lib");
+
+        return Context.newBuilder("js")
+                .engine(getEngine())
+                .allowAllAccess(true)
+                .allowExperimentalOptions(true)
+                .allowHostAccess(HostAccess.ALL)
+                .allowHostClassLoading(true)
+                .option("js.ecmascript-version", "2020")
+                // Modules in javascripts/lib are loaded with require('./<name>.js'), their sources are cached by the shared engine
+                .option("js.commonjs-require", "true")
+                .option("js.commonjs-require-cwd", libDirectory.getAbsolutePath())
+                .build();
+    }
+
+    public void printReport() {
+        final Engine engine = getEngine();
+
+        ExpansionUtils.infoLog("Polyglot engine: " + engine.getImplementationName() + " " + engine.getVersion(), false);
+
+        for (Language language : engine.getLanguages().values()) {
+            System.out.println(language.getName());
+            System.out.println("  Id: " + language.getId());
+            System.out.println("  Version: " + language.getVersion());
+            System.out.println("  Default mime type: " + language.getDefaultMimeType());
+            System.out.println("  Mime types: " + String.join(", ", language.getMimeTypes()));
+        }
+    }
+
+    public void close() {
+        if (engine == null) {
+            return;
+        }
+
+        try {
+            engine.close();
+        } catch (IllegalStateException ex) {
+            ExpansionUtils.warnLog("Could not close the javascript engine: " + ex.getMessage(), null);
+        }
+        engine = null;
+    }
+
+    public boolean isOptimized() {
+        return optimized;
+    }
+
+    private static int getJavaVersion() {
+        String version = System.getProperty("java.version");
+        if (version.startsWith("1.")) {
+            version = version.substring(2);
+        }
+
+        final int end = version.indexOf('.');
+        try {
+            return Integer.parseInt(end == -1 ? version.replaceAll("\\D.*", "") : version.substring(0, end));
+        } catch (NumberFormatException ex) {
+            return 8;
+        }
+    }
+}
@@ -23,31 +23,38 @@ package com.extendedclip.papi.expansion.javascript.manager;
 import com.extendedclip.papi.expansion.javascript.ExpansionUtils;
 import com.extendedclip.papi.expansion.javascript.JavascriptExpansion;
 import com.extendedclip.papi.expansion.javascript.JavascriptPlaceholder;
+import com.extendedclip.papi.expansion.javascript.argument.ArgumentSchema;
+import com.extendedclip.papi.expansion.javascript.cache.InvalidationCache;
+import com.extendedclip.papi.expansion.javascript.cache.PairwiseCache;
+import com.extendedclip.papi.expansion.javascript.cache.ScriptCache;
 import com.extendedclip.papi.expansion.javascript.log.LogEnum;
 import com.extendedclip.papi.expansion.javascript.log.LogStatus;
+import org.bukkit.Bukkit;
 import org.bukkit.configuration.file.FileConfiguration;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.logging.Level;
 
 public class JavascriptPlaceholdersManager {
 
     private final JavascriptExpansion exp;
-    private final FileConfiguration config;
     private final LogStatus status;
     private final ConfigManager configManager;
 
     public JavascriptPlaceholdersManager(JavascriptExpansion exp) {
         this.exp = exp;
         this.configManager = exp.getConfigManager();
-        this.config = configManager.getConfig();
         this.status = new LogStatus();
     }
 
     public int loadPlaceholders() {
+        // Looked up on every load, the configuration is replaced by ConfigManager#reload
+        final FileConfiguration config = configManager.getConfig();
 
         if (config == null || config.getKeys(false).isEmpty()) {
             return 0;
@@ -60,53 +67,135 @@ public class JavascriptPlaceholdersManager {
             ExpansionUtils.errorLog("Failed to create 'javascript' directory", e);
         }
 
+        try {
+            configManager.addDirectory(new File(directory, "lib"));
+        } catch (IOException e) {
+            ExpansionUtils.errorLog("Failed to create 'javascripts/lib' directory", e);
+        }
+
         for (String identifier : config.getKeys(false)) {
+            loadPlaceholder(config, identifier);
+        }
 
-            final String fileName = config.getString(identifier + ".file");
-            if (fileName == null || !config.contains(identifier + ".file")) {
-                status.addLog(identifier, LogEnum.FAILED_SPEC);
-                continue;
+        finalLogPrint();
+
+        if (configManager.dataPrefetchEnabled()) {
+            prefetchData(exp.getJSPlaceholders());
+        }
+        return exp.getAmountLoaded();
+    }
+
+    /**
+     * Loads the data of the given scripts in the background, a script accessing its data meanwhile
+     * waits for its own file only.
+     */
+    private void prefetchData(Collection<JavascriptPlaceholder> placeholders) {
+        final List<JavascriptPlaceholder> pending = new ArrayList<>(placeholders);
+
+        Bukkit.getScheduler().runTaskAsynchronously(exp.getPlaceholderAPI(), () -> {
+            for (JavascriptPlaceholder placeholder : pending) {
+                placeholder.getData().ensureLoaded();
             }
+        });
+    }
 
-            final File scriptFile = new File(exp.getPlaceholderAPI().getDataFolder() + "/javascripts", fileName);
+    /**
+     * Loads the given identifiers without touching the placeholders which are already loaded.
+     *
+     * @return the amount of placeholders that were loaded
+     */
+    public int loadPlaceholders(Collection<String> identifiers) {
+        final FileConfiguration config = configManager.getConfig();
 
-            if (!scriptFile.exists()) {
-                ExpansionUtils.infoLog(scriptFile.getName() + " does not exist. Creating one for you...");
+        if (config == null) {
+            return 0;
+        }
 
-                try {
-                    boolean canAdd = configManager.addFile(scriptFile);
-                    if (canAdd) {
-                        status.addLog(scriptFile.getName(), LogEnum.SUCCESSFUL_FILE);
-                    }
-                } catch (IOException e) {
-                    status.addLog(scriptFile.getName(), LogEnum.FAILED_CREATE);
-                }
+        final int before = exp.getAmountLoaded();
+        for (String identifier : identifiers) {
+            if (config.contains(identifier)) {
+                loadPlaceholder(config, identifier);
+            }
+        }
+
+        finalLogPrint();
+        return exp.getAmountLoaded() - before;
+    }
+
+    private void loadPlaceholder(FileConfiguration config, String identifier) {
+        final String fileName = config.getString(identifier + ".file");
+        if (fileName == null || !config.contains(identifier + ".file")) {
+            status.addLog(identifier, LogEnum.FAILED_SPEC);
+            return;
+        }
+
+        final File scriptFile = new File(exp.getPlaceholderAPI().getDataFolder() + "/javascripts", fileName);
 
-                continue;
+        if (!scriptFile.exists()) {
+            ExpansionUtils.infoLog(scriptFile.getName() + " does not exist. Creating one for you...");
+
+            try {
+                boolean canAdd = configManager.addFile(scriptFile);
+                if (canAdd) {
+                    status.addLog(scriptFile.getName(), LogEnum.SUCCESSFUL_FILE);
+                }
+            } catch (IOException e) {
+                status.addLog(scriptFile.getName(), LogEnum.FAILED_CREATE);
             }
 
-            final String script = getContents(scriptFile);
+            return;
+        }
 
-            if (script == null || script.isEmpty()) {
-                status.addLog(scriptFile.getName(), LogEnum.EMPTY_FILE);
-                continue;
+        final String script = getContents(scriptFile);
+
+        if (script == null || script.isEmpty()) {
+            status.addLog(scriptFile.getName(), LogEnum.EMPTY_FILE);
+            return;
+        }
+
+        final JavascriptPlaceholder placeholder = new JavascriptPlaceholder(identifier, script);
+        placeholder.setFunctionNames(config.getStringList(identifier + ".functions"));
+        placeholder.setDependencies(config.getStringList(identifier + ".uses"));
+        placeholder.setDataLimits(configManager.getDataSoftLimit(), configManager.getDataHardLimit());
+
+        if (config.isConfigurationSection(identifier + ".cache")) {
+            placeholder.setCache(new ScriptCache(
+                    config.getInt(identifier + ".cache.max-size", JavascriptPlaceholder.DEFAULT_CACHE_SIZE),
+                    config.getLong(identifier + ".cache.ttl", 0)));
+        }
+        placeholder.setArgumentSchema(ArgumentSchema.fromConfig(identifier,
+                config.getConfigurationSection(identifier + ".arguments"),
+                config.getBoolean(identifier + ".named-arguments", false),
+                exp.getArgumentPattern()));
+        final boolean added = exp.addJSPlaceholder(placeholder);
+
+        if (added) {
+            if (!config.getStringList(identifier + ".invalidate-on").isEmpty()) {
+                placeholder.setInvalidationCache(InvalidationCache.fromNames(identifier, config.getStringList(identifier + ".invalidate-on")));
             }
 
-            final JavascriptPlaceholder placeholder = new JavascriptPlaceholder(identifier, script);
-            final boolean added = exp.addJSPlaceholder(placeholder);
+            // Relational results are reused per pair of players, 0 evaluates every request
+            placeholder.setRelationalTtl(config.getLong(identifier + ".relational-ttl", PairwiseCache.DEFAULT_TTL));
 
-            if (added) {
-                if (placeholder.loadData()) {
-                    status.addLog(identifier, LogEnum.LOADED_DATA);
+            if (config.getBoolean(identifier + ".shared-data", false)) {
+                if (exp.getSharedData() != null) {
+                    placeholder.setSharedData(exp.getSharedData());
+                } else {
+                    ExpansionUtils.warnLog("'" + identifier + "' uses shared data but shared_data_transport is not set, its data stays local", null);
                 }
-                status.addLog(identifier, LogEnum.LOADED_PLACEHOLDER);
-            } else {
-                status.addLog(identifier, LogEnum.FAILED_PLACEHOLDER);
             }
-        }
 
-        finalLogPrint();
-        return exp.getAmountLoaded();
+            // Read on first use, scripts which never touch Data don't pay for their data file
+            placeholder.loadDataLazily();
+
+            // Contexts are otherwise built on the first request
+            if (config.getBoolean(identifier + ".preload", false)) {
+                placeholder.preload();
+            }
+            status.addLog(identifier, LogEnum.LOADED_PLACEHOLDER);
+        } else {
+            status.addLog(identifier, LogEnum.FAILED_PLACEHOLDER);
+        }
     }
 
     private void finalLogPrint() {
@@ -115,9 +204,9 @@ public class JavascriptPlaceholdersManager {
         printLog(LogEnum.SUCCESSFUL_FILE, "have created their files! Add your script to these files and use '/jsexpansion reload' to load them!", Level.INFO);
         printLog(LogEnum.FAILED_CREATE, "have a problem when creating their files!", Level.SEVERE);
         printLog(LogEnum.EMPTY_FILE, "have empty scripts", Level.WARNING);
-        printLog(LogEnum.LOADED_DATA, "have loaded their data!", Level.INFO);
         printLog(LogEnum.LOADED_PLACEHOLDER, "have loaded their placeholders!", Level.INFO);
         printLog(LogEnum.FAILED_PLACEHOLDER, "have failed to load their placeholders!", Level.SEVERE);
+        status.clear();
     }
 
     private void printLog(LogEnum logEnum, String message, Level level) {
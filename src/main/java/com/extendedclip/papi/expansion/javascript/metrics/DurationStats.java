@@ -0,0 +1,31 @@
+package com.extendedclip.papi.expansion.javascript.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Count, total and last value of an infrequent timed operation such as a reload or a data save.
+ */
+public class DurationStats {
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private volatile long lastNanos;
+
+    public void record(long nanos) {
+        count.increment();
+        totalNanos.add(nanos);
+        lastNanos = nanos;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getTotalSeconds() {
+        return totalNanos.sum() / 1e9;
+    }
+
+    public double getLastSeconds() {
+        return lastNanos / 1e9;
+    }
+}
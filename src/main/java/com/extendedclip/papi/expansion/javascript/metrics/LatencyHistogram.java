@@ -0,0 +1,70 @@
+package com.extendedclip.papi.expansion.javascript.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power of two microsecond buckets, from 1 microsecond up to
+ * about 18 minutes. Recording is a few atomic adds, quantiles are estimated from the buckets when read.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 31;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    public void record(long nanos) {
+        final long micros = Math.max(1, nanos / 1000);
+        final int bucket = Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+
+        buckets.incrementAndGet(bucket);
+        count.increment();
+        totalNanos.add(nanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getTotalSeconds() {
+        return totalNanos.sum() / 1e9;
+    }
+
+    /**
+     * @param quantile between 0 and 1
+     * @return the estimated latency in seconds, 0 if nothing was recorded
+     */
+    public double getQuantile(double quantile) {
+        final long[] snapshot = new long[BUCKETS];
+        long total = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        final double rank = quantile * total;
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            if (snapshot[i] == 0) {
+                continue;
+            }
+
+            if (seen + snapshot[i] >= rank) {
+                // Interpolated within the bucket [2^i, 2^(i+1)) microseconds
+                final double lower = 1L << i;
+                final double position = (rank - seen) / snapshot[i];
+                return (lower + lower * position) / 1e6;
+            }
+            seen += snapshot[i];
+        }
+        return (1L << BUCKETS) / 1e6;
+    }
+}
@@ -0,0 +1,219 @@
+package com.extendedclip.papi.expansion.javascript.metrics;
+
+import com.extendedclip.papi.expansion.javascript.ExpansionUtils;
+import com.extendedclip.papi.expansion.javascript.JavascriptExpansion;
+import com.extendedclip.papi.expansion.javascript.JavascriptPlaceholder;
+import com.extendedclip.papi.expansion.javascript.ScriptData;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the expansion's statistics in the Prometheus text format on
+ * http://127.0.0.1:&lt;metrics_port&gt;/metrics. Only bound to the loopback address, scrapers on
+ * other hosts have to go through a reverse proxy or an agent on the server.
+ */
+public class MetricsServer {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private final JavascriptExpansion expansion;
+    private final int port;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public MetricsServer(JavascriptExpansion expansion, int port) {
+        this.expansion = expansion;
+        this.port = port;
+    }
+
+    public void start() {
+        if (server != null) {
+            return;
+        }
+
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException e) {
+            ExpansionUtils.errorLog("Could not start the metrics endpoint on port " + port, e);
+            return;
+        }
+
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "Javascript-Expansion metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        server.createContext("/metrics", this::handle);
+        server.setExecutor(executor);
+        server.start();
+        ExpansionUtils.infoLog("Metrics are available on http://127.0.0.1:" + port + "/metrics");
+    }
+
+    public void stop() {
+        if (server == null) {
+            return;
+        }
+
+        server.stop(0);
+        executor.shutdownNow();
+        server = null;
+        executor = null;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            final byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private String scrape() {
+        final List<JavascriptPlaceholder> placeholders = new ArrayList<>(expansion.getJSPlaceholders());
+        placeholders.sort(Comparator.comparing(JavascriptPlaceholder::getIdentifier));
+
+        final StringBuilder out = new StringBuilder(4096);
+
+        header(out, "javascript_scripts_loaded", "gauge", "Amount of loaded scripts.");
+        sample(out, "javascript_scripts_loaded", null, placeholders.size());
+
+        header(out, "javascript_contexts_active", "gauge", "Scripts which currently hold a context.");
+        sample(out, "javascript_contexts_active", null, placeholders.stream().filter(JavascriptPlaceholder::hasContext).count());
+
+        header(out, "javascript_context_evictions_total", "counter", "Contexts closed after being idle.");
+        for (JavascriptPlaceholder placeholder : placeholders) {
+            sample(out, "javascript_context_evictions_total", label(placeholder), placeholder.getEvictions());
+        }
+
+        header(out, "javascript_evaluation_seconds", "summary", "Time spent evaluating a script, including waiting for its context.");
+        for (JavascriptPlaceholder placeholder : placeholders) {
+            final LatencyHistogram evaluations = placeholder.getMetrics().getEvaluations();
+            final String labels = label(placeholder);
+
+            for (double quantile : QUANTILES) {
+                sample(out, "javascript_evaluation_seconds", labels + ",quantile=\"" + quantile + "\"", evaluations.getQuantile(quantile));
+            }
+            sample(out, "javascript_evaluation_seconds_sum", labels, evaluations.getTotalSeconds());
+            sample(out, "javascript_evaluation_seconds_count", labels, evaluations.getCount());
+        }
+
+        header(out, "javascript_evaluation_errors_total", "counter", "Evaluations which failed with a script error.");
+        for (JavascriptPlaceholder placeholder : placeholders) {
+            sample(out, "javascript_evaluation_errors_total", label(placeholder), placeholder.getMetrics().getErrors());
+        }
+
+        header(out, "javascript_cache_hits_total", "counter", "Script cache lookups which found a value.");
+        for (JavascriptPlaceholder placeholder : placeholders) {
+            sample(out, "javascript_cache_hits_total", label(placeholder), placeholder.getCache().getHits());
+        }
+
+        header(out, "javascript_cache_misses_total", "counter", "Script cache lookups which had to compute the value.");
+        for (JavascriptPlaceholder placeholder : placeholders) {
+            sample(out, "javascript_cache_misses_total", label(placeholder), placeholder.getCache().getMisses());
+        }
+
+        header(out, "javascript_cache_hit_ratio", "gauge", "Ratio of script cache lookups which found a value.");
+        for (JavascriptPlaceholder placeholder : placeholders) {
+            sample(out, "javascript_cache_hit_ratio", label(placeholder), placeholder.getCache().getHitRatio());
+        }
+
+        header(out, "javascript_data_entries", "gauge", "Entries in the persistent and temporary data of a script.");
+        for (JavascriptPlaceholder placeholder : placeholders) {
+            final ScriptData data = placeholder.getData();
+
+            if (data == null) {
+                continue;
+            }
+            sample(out, "javascript_data_entries", label(placeholder) + ",store=\"data\"", data.peekData().size());
+            sample(out, "javascript_data_entries", label(placeholder) + ",store=\"temp\"", data.getTempData().size());
+        }
+
+        header(out, "javascript_data_bytes", "gauge", "Approximate size of the persistent and temporary data of a script.");
+        for (JavascriptPlaceholder placeholder : placeholders) {
+            final ScriptData data = placeholder.getData();
+
+            if (data == null) {
+                continue;
+            }
+            estimate(out, label(placeholder) + ",store=\"data\"", data.peekData());
+            estimate(out, label(placeholder) + ",store=\"temp\"", data.getTempData());
+        }
+
+        header(out, "javascript_data_save_seconds", "summary", "Time spent writing the data file of a script.");
+        for (JavascriptPlaceholder placeholder : placeholders) {
+            final DurationStats saves = placeholder.getMetrics().getSaves();
+            sample(out, "javascript_data_save_seconds_sum", label(placeholder), saves.getTotalSeconds());
+            sample(out, "javascript_data_save_seconds_count", label(placeholder), saves.getCount());
+        }
+
+        final DurationStats reloads = expansion.getReloadStats();
+        header(out, "javascript_reload_seconds", "summary", "Time spent loading every script, on startup and on reload.");
+        sample(out, "javascript_reload_seconds_sum", null, reloads.getTotalSeconds());
+        sample(out, "javascript_reload_seconds_count", null, reloads.getCount());
+
+        header(out, "javascript_tick_budget_stale_total", "counter", "Requests answered with their last value because the tick budget was spent.");
+        sample(out, "javascript_tick_budget_stale_total", null, expansion.getTickBudget().getStaleServed());
+
+        header(out, "javascript_last_reload_seconds", "gauge", "Duration of the most recent load of every script.");
+        sample(out, "javascript_last_reload_seconds", null, reloads.getLastSeconds());
+
+        return out.toString();
+    }
+
+    private static void estimate(StringBuilder out, String labels, Map<String, Object> map) {
+        try {
+            sample(out, "javascript_data_bytes", labels, ExpansionUtils.estimateSize(map));
+        } catch (RuntimeException ignored) {
+            // Written to by a script at the same time, the next scrape reports it
+        }
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static String label(JavascriptPlaceholder placeholder) {
+        return "identifier=\"" + placeholder.getIdentifier().replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
@@ -0,0 +1,37 @@
+package com.extendedclip.papi.expansion.javascript.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Evaluation and persistence statistics of one script, exported by the {@link MetricsServer}.
+ */
+public class ScriptMetrics {
+
+    private final LatencyHistogram evaluations = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final DurationStats saves = new DurationStats();
+
+    public void recordEvaluation(long nanos) {
+        evaluations.record(nanos);
+    }
+
+    public void recordError() {
+        errors.increment();
+    }
+
+    public void recordSave(long nanos) {
+        saves.record(nanos);
+    }
+
+    public LatencyHistogram getEvaluations() {
+        return evaluations;
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public DurationStats getSaves() {
+        return saves;
+    }
+}
@@ -0,0 +1,70 @@
+package com.extendedclip.papi.expansion.javascript.parser;
+
+import me.clip.placeholderapi.PlaceholderAPIPlugin;
+import me.clip.placeholderapi.expansion.PlaceholderExpansion;
+import org.bukkit.OfflinePlayer;
+
+/**
+ * A placeholder declared in the 'uses' list of a script. It is resolved straight through its
+ * expansion and bound as a variable, e.g. 'player_name' for %player_name%, so the script does
+ * not depend on a full PlaceholderAPI scan of its output.
+ */
+public class PlaceholderDependency {
+
+    private final String placeholder;
+    private final String variable;
+    private final String expansionIdentifier;
+    private final String params;
+    private volatile PlaceholderExpansion expansion;
+
+    public PlaceholderDependency(String placeholder) {
+        if (placeholder.length() > 1 && placeholder.startsWith("%") && placeholder.endsWith("%")) {
+            placeholder = placeholder.substring(1, placeholder.length() - 1);
+        }
+
+        this.placeholder = placeholder;
+        this.variable = toVariable(placeholder);
+
+        final int index = placeholder.indexOf('_');
+        this.expansionIdentifier = (index == -1 ? placeholder : placeholder.substring(0, index)).toLowerCase();
+        this.params = index == -1 ? "" : placeholder.substring(index + 1);
+    }
+
+    public String getPlaceholder() {
+        return placeholder;
+    }
+
+    public String getVariable() {
+        return variable;
+    }
+
+    public String resolve(OfflinePlayer player) {
+        PlaceholderExpansion expansion = this.expansion;
+
+        // Expansions can be registered after scripts are loaded, or reloaded in between
+        if (expansion == null || !expansion.isRegistered()) {
+            expansion = PlaceholderAPIPlugin.getInstance().getLocalExpansionManager().getExpansion(expansionIdentifier);
+            this.expansion = expansion;
+        }
+
+        if (expansion == null) {
+            return "%" + placeholder + "%";
+        }
+
+        final String value = expansion.onRequest(player, params);
+        return value == null ? "%" + placeholder + "%" : value;
+    }
+
+    private static String toVariable(String placeholder) {
+        final StringBuilder builder = new StringBuilder(placeholder.length() + 1);
+
+        if (placeholder.isEmpty() || !Character.isJavaIdentifierStart(placeholder.charAt(0))) {
+            builder.append('_');
+        }
+
+        for (char c : placeholder.toCharArray()) {
+            builder.append(Character.isJavaIdentifierPart(c) ? c : '_');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,271 @@
+package com.extendedclip.papi.expansion.javascript.profiler;
+
+import com.extendedclip.papi.expansion.javascript.ExpansionUtils;
+import com.extendedclip.papi.expansion.javascript.JavascriptExpansion;
+import com.oracle.truffle.api.source.SourceSection;
+import com.oracle.truffle.tools.profiler.CPUSampler;
+import com.oracle.truffle.tools.profiler.ProfilerNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Samples the JS stacks of one script while it serves normal requests. Truffle's CPU sampler
+ * collects while any profile is active and samples the whole engine, every script and every
+ * thread, at a fixed interval. A profile keeps the stacks which pass through its script and
+ * collected since it started. On GraalVM 20.3 collecting instruments every function of the
+ * engine with a shadow stack, so all scripts run slower while a profile is active; later
+ * versions sample at safepoints instead. Collecting stops with the last profile.
+ */
+public class ScriptProfiler {
+
+    private static final long SAMPLE_INTERVAL = 10;
+    private static final int TOP_FUNCTIONS = 15;
+
+    private final JavascriptExpansion expansion;
+    private final File directory;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private ScheduledExecutorService timer;
+    private CPUSampler cpuSampler;
+
+    public ScriptProfiler(JavascriptExpansion expansion) {
+        this.expansion = expansion;
+        this.directory = new File(expansion.getPlaceholderAPI().getDataFolder(), "javascripts" + File.separator + "profiles");
+    }
+
+    public boolean isProfiling(String identifier) {
+        return sessions.containsKey(identifier);
+    }
+
+    /**
+     * Starts sampling the script, the callback receives the written summary file once the profile
+     * finished, or null if it could not be taken or written.
+     *
+     * @return false if the script is already being profiled
+     */
+    public synchronized boolean start(String identifier, int seconds, Consumer<File> callback) {
+        if (sessions.containsKey(identifier)) {
+            return false;
+        }
+
+        if (cpuSampler == null) {
+            cpuSampler = CPUSampler.find(expansion.getEngineManager().getEngine());
+        }
+
+        if (!cpuSampler.isCollecting()) {
+            cpuSampler.clearData();
+            cpuSampler.setPeriod(SAMPLE_INTERVAL);
+            cpuSampler.setCollecting(true);
+        }
+
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "Javascript-Expansion profiler");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        // Stacks collected for profiles which are still running are not part of this one
+        final Session session = new Session(identifier, seconds, collapse(identifier));
+        sessions.put(identifier, session);
+        timer.schedule(() -> callback.accept(finish(session)), seconds, TimeUnit.SECONDS);
+        return true;
+    }
+
+    private synchronized File finish(Session session) {
+        if (sessions.remove(session.identifier) != session) {
+            // Stopped meanwhile
+            return null;
+        }
+
+        try {
+            collapse(session.identifier).forEach((stack, count) -> {
+                final int hits = count - session.baseline.getOrDefault(stack, 0);
+
+                if (hits > 0) {
+                    session.add(stack, hits);
+                }
+            });
+        } catch (RuntimeException e) {
+            ExpansionUtils.errorLog("Could not read the profile of " + session.identifier, e);
+            return null;
+        } finally {
+            if (sessions.isEmpty()) {
+                stopCollecting();
+                // Finish runs on the timer thread itself, shutdown lets the current task complete
+                timer.shutdown();
+                timer = null;
+            }
+        }
+        return write(session);
+    }
+
+    public synchronized void stopAll() {
+        sessions.clear();
+        stopCollecting();
+
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+    }
+
+    private void stopCollecting() {
+        if (cpuSampler == null) {
+            return;
+        }
+
+        try {
+            cpuSampler.setCollecting(false);
+            cpuSampler.clearData();
+        } catch (RuntimeException e) {
+            // The engine is already closed
+        }
+    }
+
+    /**
+     * @return the stacks collected so far which pass through the script, in the folded format,
+     * with the number of samples each of them was on top
+     */
+    private Map<String, Integer> collapse(String identifier) {
+        final Map<String, Integer> stacks = new HashMap<>();
+
+        for (ProfilerNode<CPUSampler.Payload> root : rootNodes()) {
+            collapse(identifier, root, new ArrayList<>(), false, stacks);
+        }
+        return stacks;
+    }
+
+    private static void collapse(String identifier, ProfilerNode<CPUSampler.Payload> node, List<String> frames,
+                                 boolean inScript, Map<String, Integer> stacks) {
+        final SourceSection section = node.getSourceSection();
+        // Internal frames are skipped, their samples count for the frame which called them
+        final boolean visible = section != null && !section.getSource().isInternal();
+
+        if (visible) {
+            frames.add(format(node, section));
+            inScript |= identifier.equals(section.getSource().getName());
+        }
+
+        final int self = node.getPayload().getSelfHitCount();
+
+        if (inScript && self > 0 && !frames.isEmpty()) {
+            stacks.merge(String.join(";", frames), self, Integer::sum);
+        }
+
+        for (ProfilerNode<CPUSampler.Payload> child : node.getChildren()) {
+            collapse(identifier, child, frames, inScript, stacks);
+        }
+
+        if (visible) {
+            frames.remove(frames.size() - 1);
+        }
+    }
+
+    /**
+     * The call trees of every thread sampled. GraalVM 20.3 merges them in getRootNodes(), later
+     * versions keep them per context in getData(), neither exists in the other.
+     */
+    @SuppressWarnings("unchecked")
+    private List<ProfilerNode<CPUSampler.Payload>> rootNodes() {
+        final List<ProfilerNode<CPUSampler.Payload>> roots = new ArrayList<>();
+
+        try {
+            try {
+                roots.addAll((Collection<ProfilerNode<CPUSampler.Payload>>) CPUSampler.class.getMethod("getRootNodes").invoke(cpuSampler));
+            } catch (NoSuchMethodException e) {
+                final Map<?, ?> contexts = (Map<?, ?>) CPUSampler.class.getMethod("getData").invoke(cpuSampler);
+
+                for (Object data : contexts.values()) {
+                    final Map<?, ?> threads = (Map<?, ?>) data.getClass().getMethod("getThreadData").invoke(data);
+                    threads.values().forEach(nodes -> roots.addAll((Collection<ProfilerNode<CPUSampler.Payload>>) nodes));
+                }
+            }
+        } catch (InvocationTargetException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unsupported CPU sampler", e);
+        }
+        return roots;
+    }
+
+    private File write(Session session) {
+        final String name = session.identifier + "-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        final File collapsed = new File(directory, name + ".collapsed");
+        final File summary = new File(directory, name + ".txt");
+
+        try {
+            expansion.getConfigManager().addDirectory(directory);
+
+            // Folded stacks, the input format of flamegraph.pl and speedscope
+            try (PrintWriter out = new PrintWriter(collapsed, StandardCharsets.UTF_8.name())) {
+                session.stacks.forEach((stack, count) -> out.println(stack + " " + count));
+            }
+
+            try (PrintWriter out = new PrintWriter(summary, StandardCharsets.UTF_8.name())) {
+                out.println("Profile of '" + session.identifier + "', " + session.hits + " sample" + ExpansionUtils.plural(session.hits)
+                        + " inside the script in " + session.seconds + " second" + ExpansionUtils.plural(session.seconds)
+                        + ", sampled every " + SAMPLE_INTERVAL + "ms");
+                out.println("The whole engine was sampled, scripts running meanwhile on other threads share the samples.");
+                out.println();
+                out.println(String.format("%8s %8s %7s  %s", "self", "total", "self %", "function"));
+
+                final List<String> frames = new ArrayList<>(session.total.keySet());
+                frames.sort(Comparator.comparingInt((String frame) -> session.self.getOrDefault(frame, 0))
+                        .thenComparingInt(session.total::get)
+                        .reversed());
+
+                for (String frame : frames.subList(0, Math.min(TOP_FUNCTIONS, frames.size()))) {
+                    final int self = session.self.getOrDefault(frame, 0);
+                    out.println(String.format("%8d %8d %6.1f%%  %s", self, session.total.get(frame),
+                            session.hits == 0 ? 0 : self * 100.0 / session.hits, frame));
+                }
+            }
+        } catch (IOException e) {
+            ExpansionUtils.errorLog("Could not write the profile of " + session.identifier, e);
+            return null;
+        }
+        return summary;
+    }
+
+    private static String format(ProfilerNode<CPUSampler.Payload> node, SourceSection section) {
+        final String name = node.getRootName() == null || node.getRootName().isEmpty() ? "<anonymous>" : node.getRootName();
+        // Spaces and semicolons separate stacks and counts in the collapsed format
+        return name.replace(';', '_').replace(' ', '_') + " (" + section.getSource().getName().replace(' ', '_') + ":" + section.getStartLine() + ")";
+    }
+
+    private static final class Session {
+
+        private final String identifier;
+        private final int seconds;
+        // Stacks collected before the profile started, by profiles of other scripts
+        private final Map<String, Integer> baseline;
+        private final Map<String, Integer> stacks = new HashMap<>();
+        private final Map<String, Integer> self = new HashMap<>();
+        private final Map<String, Integer> total = new HashMap<>();
+        private int hits;
+
+        private Session(String identifier, int seconds, Map<String, Integer> baseline) {
+            this.identifier = identifier;
+            this.seconds = seconds;
+            this.baseline = baseline;
+        }
+
+        private void add(String stack, int count) {
+            final List<String> frames = Arrays.asList(stack.split(";"));
+
+            hits += count;
+            stacks.put(stack, count);
+            self.merge(frames.get(frames.size() - 1), count, Integer::sum);
+            new HashSet<>(frames).forEach(frame -> total.merge(frame, count, Integer::sum));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.extendedclip.papi.expansion.javascript;
+
+import me.clip.placeholderapi.PlaceholderAPIPlugin;
+import org.bukkit.OfflinePlayer;
+import org.graalvm.polyglot.Context;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.MockedStatic;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Reloads the scripts repeatedly and checks that nothing keeps the replaced placeholders or
+ * their contexts reachable: each of them is garbage collected once replaced.
+ */
+class ReloadLeakTest {
+
+    private static final int RELOADS = 20;
+    private static final long GC_TIMEOUT = 10_000;
+
+    @TempDir
+    File dataFolder;
+
+    private MockedStatic<PlaceholderAPIPlugin> placeholderApi;
+    private JavascriptExpansion expansion;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        placeholderApi = TestServer.placeholderApi(dataFolder);
+
+        final File scripts = new File(dataFolder, "javascripts");
+        assertTrue(scripts.mkdirs());
+        write(new File(dataFolder, "javascript_placeholders.yml"),
+                "counter:\n  file: counter.js\n"
+                        + "greeting:\n  file: greeting.js\n  functions:\n  - hello\n  preload: true\n");
+        write(new File(scripts, "counter.js"), "Data.incr('requests'); 'value ' + Data.get('requests');");
+        write(new File(scripts, "greeting.js"), "function hello() { return 'hello ' + args.length; }");
+
+        expansion = new JavascriptExpansion();
+        expansion.getEngineManager().create();
+    }
+
+    @AfterEach
+    void tearDown() {
+        expansion.getEngineManager().close();
+        placeholderApi.close();
+    }
+
+    @Test
+    void reloadReleasesPlaceholdersAndContexts() throws Exception {
+        final OfflinePlayer player = mock(OfflinePlayer.class, withSettings().stubOnly());
+        when(player.getUniqueId()).thenReturn(UUID.randomUUID());
+
+        final List<WeakReference<JavascriptPlaceholder>> placeholders = new ArrayList<>();
+        final List<WeakReference<Context>> contexts = new ArrayList<>();
+
+        assertEquals(2, expansion.reloadScripts());
+
+        for (int i = 0; i < RELOADS; i++) {
+            final JavascriptPlaceholder counter = expansion.getJSPlaceholder("counter");
+            final JavascriptPlaceholder greeting = expansion.getJSPlaceholder("greeting");
+
+            // Data is saved on reload, the counter keeps counting across them
+            assertEquals("value " + (i + 1), counter.evaluate(player));
+            assertEquals("hello 1", greeting.evaluateFunction("hello", player, "a"));
+
+            placeholders.add(new WeakReference<>(counter));
+            placeholders.add(new WeakReference<>(greeting));
+            contexts.add(new WeakReference<>(contextOf(counter)));
+            contexts.add(new WeakReference<>(contextOf(greeting)));
+
+            assertEquals(2, expansion.reloadScripts());
+        }
+
+        awaitCollected(placeholders);
+        awaitCollected(contexts);
+    }
+
+    private static <T> void awaitCollected(List<WeakReference<T>> references) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + GC_TIMEOUT;
+
+        while (references.stream().anyMatch(reference -> reference.get() != null)) {
+            if (System.currentTimeMillis() > deadline) {
+                final long remaining = references.stream().filter(reference -> reference.get() != null).count();
+                fail(remaining + " of " + references.size() + " instances are still reachable after reloading");
+            }
+
+            System.gc();
+            Thread.sleep(50);
+        }
+    }
+
+    private static Context contextOf(JavascriptPlaceholder placeholder) throws ReflectiveOperationException {
+        final Field field = JavascriptPlaceholder.class.getDeclaredField("context");
+        field.setAccessible(true);
+
+        final Context context = (Context) field.get(placeholder);
+        assertNotNull(context, "the context is built by the first request");
+        return context;
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,99 @@
+package com.extendedclip.papi.expansion.javascript;
+
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScriptDataTest {
+
+    @BeforeAll
+    static void setUpServer() {
+        TestServer.install();
+    }
+
+    private static ScriptData read(String content) throws InvalidConfigurationException {
+        final YamlConfiguration yaml = new YamlConfiguration();
+        yaml.loadFromString(content);
+
+        final ScriptData data = new ScriptData();
+        data.readFrom(yaml);
+        return data;
+    }
+
+    @Test
+    void keepsLeafPathsOnly() throws InvalidConfigurationException {
+        final ScriptData data = read("a:\n  b:\n    c: 1\n  d: text\ne: 2\n");
+
+        assertEquals(3, data.size());
+        assertEquals(1, data.get("a.b.c"));
+        assertEquals("text", data.get("a.d"));
+        assertEquals(2, data.get("e"));
+    }
+
+    @Test
+    void rebuildsMapsStoredAsSections() throws InvalidConfigurationException {
+        // Written by Data.set("a", {b: {c: 1}, d: "text"}) before a restart
+        final ScriptData data = read("a:\n  b:\n    c: 1\n  d: text\n");
+
+        final Map<String, Object> expected = new HashMap<>();
+        expected.put("b", Collections.singletonMap("c", 1));
+        expected.put("d", "text");
+
+        assertTrue(data.exists("a"));
+        assertEquals(expected, data.get("a"));
+        assertEquals(1, ((Map<?, ?>) data.get("a.b")).get("c"));
+        assertNull(data.get("missing"));
+    }
+
+    @Test
+    void replacingASectionDropsItsEntries() throws InvalidConfigurationException {
+        final ScriptData data = read("a:\n  b: 1\n  c: 2\nother: 3\n");
+
+        data.set("a", "value");
+
+        assertEquals("value", data.get("a"));
+        assertNull(data.get("a.b"));
+        assertEquals(2, data.size());
+
+        data.remove("other");
+        assertFalse(data.exists("other"));
+    }
+
+    @Test
+    void concurrentSetAndIncrKeepTheKeyInOnePlace() throws Exception {
+        for (int i = 0; i < 500; i++) {
+            final ScriptData data = new ScriptData();
+            final CountDownLatch start = new CountDownLatch(1);
+            final Thread setter = new Thread(() -> {
+                awaitQuietly(start);
+                data.set("votes", "reset");
+            });
+            setter.start();
+
+            start.countDown();
+            data.incr("votes", 1);
+            setter.join();
+
+            // Either write may win, but the key is never both an entry and a counter
+            final boolean entry = data.peekData().get("votes") != null;
+            final boolean counter = data.getCounters().containsKey("votes");
+            assertTrue(entry != counter);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.extendedclip.papi.expansion.javascript;
+
+import me.clip.placeholderapi.PlaceholderAPIPlugin;
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+import org.mockito.MockedStatic;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * Stand-ins for the server and PlaceholderAPI, enough to load scripts outside of a server.
+ * Mocks are stub-only, they must not keep the listeners and tasks they are given reachable.
+ */
+public final class TestServer {
+
+    private TestServer() {
+    }
+
+    /**
+     * Sets the Bukkit server once per JVM, before anything reads Bukkit.getLogger().
+     */
+    public static synchronized void install() {
+        if (Bukkit.getServer() != null) {
+            return;
+        }
+
+        final Server server = mock(Server.class, withSettings().stubOnly());
+        final BukkitScheduler scheduler = mock(BukkitScheduler.class, withSettings().stubOnly());
+        final BukkitTask task = mock(BukkitTask.class, withSettings().stubOnly());
+
+        when(server.getLogger()).thenReturn(Logger.getLogger("TestServer"));
+        when(server.getPluginManager()).thenReturn(mock(PluginManager.class, withSettings().stubOnly()));
+        when(server.getScheduler()).thenReturn(scheduler);
+        when(scheduler.runTaskAsynchronously(any(), any(Runnable.class))).thenReturn(task);
+        when(scheduler.runTaskTimer(any(), any(Runnable.class), anyLong(), anyLong())).thenReturn(task);
+        when(scheduler.runTaskTimerAsynchronously(any(), any(Runnable.class), anyLong(), anyLong())).thenReturn(task);
+
+        Bukkit.setServer(server);
+    }
+
+    /**
+     * @return a PlaceholderAPI plugin using the given data folder and an empty config
+     */
+    public static PlaceholderAPIPlugin plugin(File dataFolder) {
+        install();
+
+        final PlaceholderAPIPlugin plugin = mock(PlaceholderAPIPlugin.class, withSettings().stubOnly());
+        when(plugin.getDataFolder()).thenReturn(dataFolder);
+        when(plugin.getConfig()).thenReturn(new YamlConfiguration());
+        return plugin;
+    }
+
+    /**
+     * Makes PlaceholderAPIPlugin.getInstance() return a plugin using the given data folder, until
+     * the returned mock is closed.
+     */
+    public static MockedStatic<PlaceholderAPIPlugin> placeholderApi(File dataFolder) {
+        final PlaceholderAPIPlugin plugin = plugin(dataFolder);
+
+        final MockedStatic<PlaceholderAPIPlugin> mocked = mockStatic(PlaceholderAPIPlugin.class, withSettings().stubOnly());
+        mocked.when(PlaceholderAPIPlugin::getInstance).thenReturn(plugin);
+        return mocked;
+    }
+}
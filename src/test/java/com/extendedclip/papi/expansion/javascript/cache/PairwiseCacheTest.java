@@ -0,0 +1,78 @@
+package com.extendedclip.papi.expansion.javascript.cache;
+
+import org.bukkit.entity.Player;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Relational results must not outlive the players they belong to, nor grow without bound.
+ */
+class PairwiseCacheTest {
+
+    private final PairwiseCache cache = new PairwiseCache(60000);
+
+    private static Player player(boolean online) {
+        final Player player = mock(Player.class, withSettings().stubOnly());
+        when(player.getUniqueId()).thenReturn(UUID.randomUUID());
+        when(player.isOnline()).thenReturn(online);
+        return player;
+    }
+
+    @Test
+    void keepsResultsOfOnlinePlayers() {
+        final Player one = player(true);
+        final Player two = player(true);
+
+        cache.put(one, two, "rank", "admin");
+
+        assertEquals("admin", cache.get(one.getUniqueId(), two.getUniqueId(), "rank"));
+        assertNull(cache.get(two.getUniqueId(), one.getUniqueId(), "rank"));
+    }
+
+    @Test
+    void dropsResultsStoredAfterAPlayerQuit() {
+        final Player viewer = player(true);
+        final Player online = player(true);
+        final Player gone = player(false);
+
+        cache.put(viewer, online, "rank", "admin");
+        // The evaluation finished after the quit was handled
+        cache.put(viewer, gone, "rank", "member");
+        cache.put(gone, viewer, "rank", "member");
+
+        assertNull(cache.get(viewer.getUniqueId(), gone.getUniqueId(), "rank"));
+        assertNull(cache.get(gone.getUniqueId(), viewer.getUniqueId(), "rank"));
+        assertEquals("admin", cache.get(viewer.getUniqueId(), online.getUniqueId(), "rank"));
+    }
+
+    @Test
+    void invalidatesBothDirections() {
+        final Player one = player(true);
+        final Player two = player(true);
+
+        cache.put(one, two, "rank", "admin");
+        cache.put(two, one, "rank", "member");
+        cache.invalidate(two.getUniqueId());
+
+        assertNull(cache.get(one.getUniqueId(), two.getUniqueId(), "rank"));
+        assertNull(cache.get(two.getUniqueId(), one.getUniqueId(), "rank"));
+    }
+
+    @Test
+    void boundsTheResultsOfAPair() {
+        final Player one = player(true);
+        final Player two = player(true);
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put(one, two, "arg" + i, "value");
+        }
+
+        // Each distinct argument is a key, the pair keeps the latest ones only
+        assertNull(cache.get(one.getUniqueId(), two.getUniqueId(), "arg0"));
+        assertEquals("value", cache.get(one.getUniqueId(), two.getUniqueId(), "arg999"));
+    }
+}
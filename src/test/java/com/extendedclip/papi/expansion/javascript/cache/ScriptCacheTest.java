@@ -0,0 +1,81 @@
+package com.extendedclip.papi.expansion.javascript.cache;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.PolyglotException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The cache of a script is shared by its request context and its async task context.
+ */
+class ScriptCacheTest {
+
+    private final ScriptCache cache = new ScriptCache(16, 0);
+    private final List<Context> contexts = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        contexts.forEach(Context::close);
+    }
+
+    private Context context() {
+        final Context context = Context.newBuilder("js").allowAllAccess(true).build();
+        context.getBindings("js").putMember("Cache", cache);
+        contexts.add(context);
+        return context;
+    }
+
+    @Test
+    void valuesOutliveTheContextWhichCachedThem() {
+        final Context task = context();
+        task.eval("js", "Cache.put('top', {name: 'bob', scores: [3, 2.5]});"
+                + "Cache.get('count', function (key) { return 7; });");
+        task.close();
+
+        final Context request = context();
+        assertEquals("bob 2 2.5 7", request.eval("js",
+                "var top = Cache.getIfPresent('top');"
+                        + "top.get('name') + ' ' + top.get('scores').size() + ' ' + top.get('scores').get(1) + ' ' + Cache.getIfPresent('count');").asString());
+    }
+
+    @Test
+    void functionsAreNotCached() {
+        final Context context = context();
+
+        assertThrows(PolyglotException.class, () -> context.eval("js", "Cache.put('format', function () { return 1; });"));
+        assertNull(cache.getIfPresent("format"));
+    }
+
+    @Test
+    void loadingDoesNotBlockTheCache() throws Exception {
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Context context = context();
+        context.getBindings("js").putMember("loading", loading);
+        context.getBindings("js").putMember("release", release);
+
+        final CompletableFuture<String> slow = CompletableFuture.supplyAsync(() -> context.eval("js",
+                "Cache.get('slow', function (key) { loading.countDown(); release.await(); return 'loaded'; });").asString());
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        // Used from another thread while the loader runs
+        final CompletableFuture<Object> other = CompletableFuture.supplyAsync(() -> {
+            cache.put("fast", "value");
+            cache.invalidate("missing");
+            return cache.getIfPresent("fast");
+        });
+        assertEquals("value", other.get(5, TimeUnit.SECONDS));
+
+        release.countDown();
+        assertEquals("loaded", slow.get(5, TimeUnit.SECONDS));
+        assertEquals("loaded", cache.getIfPresent("slow"));
+    }
+}
@@ -0,0 +1,296 @@
+package com.extendedclip.papi.expansion.javascript.cloud;
+
+import com.extendedclip.papi.expansion.javascript.JavascriptExpansion;
+import com.extendedclip.papi.expansion.javascript.TestServer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Fetches the script list and scripts from a local stand-in for Github, checking the conditional
+ * requests, the cached copy in javascripts/.cache and the verification of downloads.
+ */
+class GithubScriptManagerTest {
+
+    private static final String INDEX_V1 = "[{\"name\": \"first\", \"version\": \"1.0\", \"url\": \"http://localhost/first.js\"},"
+            + " {\"name\": \"second\", \"version\": \"1.0\", \"url\": \"http://localhost/second.js\"}]";
+    private static final String INDEX_V2 = "[{\"name\": \"third\", \"version\": \"2.0\", \"url\": \"http://localhost/third.js\"}]";
+    private static final String LAST_MODIFIED = "Wed, 21 Oct 2015 07:28:00 GMT";
+    private static final String SCRIPT = "function hello() { return 'hello'; }";
+
+    @TempDir
+    File dataFolder;
+
+    private HttpServer server;
+    private String indexUrl;
+    private String scriptUrl;
+    private JavascriptExpansion expansion;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private volatile String body = INDEX_V1;
+    private volatile String etag = "\"v1\"";
+    private volatile boolean failing;
+    private volatile String ifNoneMatch;
+    private volatile String ifModifiedSince;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/master_list.json", this::handle);
+        server.createContext("/hello.js", this::handleScript);
+        server.start();
+        indexUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/master_list.json";
+        scriptUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/hello.js";
+
+        expansion = mock(JavascriptExpansion.class, withSettings().stubOnly());
+        when(expansion.getPlaceholderAPI()).thenReturn(TestServer.plugin(dataFolder));
+        when(expansion.getVersion()).thenReturn("test");
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+
+        try {
+            if (failing) {
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+
+            if (etag.equals(ifNoneMatch)) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+            exchange.sendResponseHeaders(200, bytes.length);
+
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleScript(HttpExchange exchange) throws IOException {
+        final byte[] bytes = SCRIPT.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private GithubScriptManager fetch() {
+        final GithubScriptManager manager = new GithubScriptManager(expansion, indexUrl);
+        manager.fetchIndex();
+        return manager;
+    }
+
+    @Test
+    void downloadsAndCachesTheIndex() throws IOException {
+        final GithubScriptManager manager = fetch();
+
+        assertNames(manager, "first", "second");
+        assertNull(ifNoneMatch);
+        assertNull(ifModifiedSince);
+        assertTrue(indexFile().exists());
+
+        final Properties meta = meta();
+        assertEquals("\"v1\"", meta.getProperty("etag"));
+        assertEquals(LAST_MODIFIED, meta.getProperty("last-modified"));
+    }
+
+    @Test
+    void reusesTheCachedIndexWhenNotModified() {
+        fetch();
+        final long cachedAt = indexFile().lastModified();
+
+        // A restart, the list is read from the cache after a 304
+        final GithubScriptManager manager = fetch();
+
+        assertEquals(2, requests.get());
+        assertEquals(1, notModified.get());
+        assertEquals("\"v1\"", ifNoneMatch);
+        assertEquals(LAST_MODIFIED, ifModifiedSince);
+        assertEquals(cachedAt, indexFile().lastModified());
+        assertNames(manager, "first", "second");
+    }
+
+    @Test
+    void replacesTheCachedIndexWhenChanged() throws IOException {
+        fetch();
+
+        body = INDEX_V2;
+        etag = "\"v2\"";
+        final GithubScriptManager manager = fetch();
+
+        assertEquals("\"v1\"", ifNoneMatch);
+        assertEquals(0, notModified.get());
+        assertNames(manager, "third");
+        assertEquals("\"v2\"", meta().getProperty("etag"));
+    }
+
+    @Test
+    void usesTheCachedIndexWhenTheServerFails() {
+        fetch();
+
+        failing = true;
+        final GithubScriptManager manager = fetch();
+
+        assertEquals(2, requests.get());
+        assertNames(manager, "first", "second");
+    }
+
+    @Test
+    void requestsTheFullIndexWithoutACachedCopy() {
+        fetch();
+        assertTrue(indexFile().delete());
+
+        // The validators of a missing copy would turn into a 304 with nothing to read
+        final GithubScriptManager manager = fetch();
+
+        assertNull(ifNoneMatch);
+        assertNull(ifModifiedSince);
+        assertEquals(0, notModified.get());
+        assertNames(manager, "first", "second");
+    }
+
+    @Test
+    void keepsNoListWhenNothingIsCached() {
+        failing = true;
+        final GithubScriptManager manager = fetch();
+
+        assertNull(manager.getAvailableScripts());
+        assertFalse(indexFile().exists());
+    }
+
+    @Test
+    void movesAVerifiedDownloadIntoPlace() throws Exception {
+        final GithubScriptManager manager = new GithubScriptManager(expansion, indexUrl);
+
+        manager.download(new GithubScript("hello", "1.0", "test", null, scriptUrl, sha256(SCRIPT).toUpperCase()));
+
+        assertEquals(SCRIPT, new String(Files.readAllBytes(scriptFile("hello.js").toPath()), StandardCharsets.UTF_8));
+        assertNoTemporaryFiles();
+    }
+
+    @Test
+    void discardsADownloadWithAnotherHash() throws Exception {
+        final GithubScriptManager manager = new GithubScriptManager(expansion, indexUrl);
+        final GithubScript script = new GithubScript("hello", "1.0", "test", null, scriptUrl, sha256("something else"));
+
+        final IOException error = assertThrows(IOException.class, () -> manager.download(script));
+
+        assertTrue(error.getMessage().startsWith("checksum mismatch"), error.getMessage());
+        assertFalse(scriptFile("hello.js").exists());
+        assertNoTemporaryFiles();
+    }
+
+    @Test
+    void keepsAnExistingScript() throws Exception {
+        final GithubScriptManager manager = new GithubScriptManager(expansion, indexUrl);
+        final File existing = scriptFile("hello.js");
+        assertTrue(existing.getParentFile().mkdirs());
+        Files.write(existing.toPath(), "local".getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(IOException.class, () -> manager.download(new GithubScript("hello", "1.0", "test", null, scriptUrl)));
+        assertEquals("local", new String(Files.readAllBytes(existing.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void rejectsNamesWhichAreNotPlainFileNames() {
+        final GithubScriptManager manager = new GithubScriptManager(expansion, indexUrl);
+
+        for (String name : new String[]{"../escaped", "nested/script", "dotted.name", ""}) {
+            assertThrows(IOException.class, () -> manager.download(new GithubScript(name, "1.0", "test", null, scriptUrl)), name);
+        }
+        assertFalse(new File(dataFolder, "escaped.js").exists());
+        assertEquals(0, requests.get());
+    }
+
+    @Test
+    void ignoresIndexEntriesWithInvalidNames() {
+        body = "[{\"name\": \"../escaped\", \"url\": \"http://localhost/a.js\"},"
+                + " {\"name\": \"with.dot\", \"url\": \"http://localhost/b.js\"},"
+                + " {\"name\": \"valid_name-1\", \"url\": \"http://localhost/c.js\"}]";
+
+        assertNames(fetch(), "valid_name-1");
+    }
+
+    private void assertNoTemporaryFiles() {
+        final File[] files = scriptFile("").listFiles((dir, name) -> name.endsWith(".tmp"));
+
+        assertNotNull(files);
+        assertEquals(0, files.length);
+    }
+
+    private File scriptFile(String name) {
+        return new File(dataFolder, "javascripts" + File.separator + name);
+    }
+
+    private static String sha256(String text) throws NoSuchAlgorithmException {
+        final StringBuilder hex = new StringBuilder();
+
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8))) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static void assertNames(GithubScriptManager manager, String... names) {
+        final List<GithubScript> scripts = manager.getAvailableScripts();
+
+        assertNotNull(scripts);
+        assertEquals(names.length, scripts.size());
+        for (String name : names) {
+            assertNotNull(manager.getScript(name), name);
+        }
+    }
+
+    private File indexFile() {
+        return new File(dataFolder, "javascripts" + File.separator + ".cache" + File.separator + "master_list.json");
+    }
+
+    private Properties meta() throws IOException {
+        final Properties meta = new Properties();
+
+        try (InputStream in = new FileInputStream(new File(dataFolder, "javascripts" + File.separator + ".cache" + File.separator + "master_list.properties"))) {
+            meta.load(in);
+        }
+        return meta;
+    }
+}
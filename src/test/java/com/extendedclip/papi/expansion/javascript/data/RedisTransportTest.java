@@ -0,0 +1,278 @@
+package com.extendedclip.papi.expansion.javascript.data;
+
+import com.extendedclip.papi.expansion.javascript.TestServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The Redis client against a socket speaking the protocol, answering each command with the
+ * reply given by the test.
+ */
+class RedisTransportTest {
+
+    private static final String HASH = "javascript:data:test";
+    private static final long TIMEOUT = 5000;
+
+    private FakeRedis redis;
+    private RedisTransport transport;
+
+    @BeforeAll
+    static void setUpServer() {
+        TestServer.install();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (transport != null) {
+            transport.close();
+        }
+        if (redis != null) {
+            redis.close();
+        }
+    }
+
+    private RedisTransport connect(Function<List<String>, String> replies, String password) throws IOException {
+        redis = new FakeRedis(replies);
+        transport = new RedisTransport("127.0.0.1", redis.getPort(), password);
+        return transport;
+    }
+
+    @Test
+    void readsReplies() throws IOException {
+        connect(command -> {
+            switch (command.get(0)) {
+                case "HGETALL":
+                    return "*4\r\n$1\r\na\r\n$1\r\n1\r\n$1\r\nb\r\n$2\r\n\u00e9\r\n";
+                case "HMGET":
+                    return "*2\r\n$1\r\n1\r\n$-1\r\n";
+                case "HINCRBY":
+                    return ":5\r\n";
+                default:
+                    return "$3\r\n2.5\r\n";
+            }
+        }, null);
+
+        final Map<String, String> all = new HashMap<>();
+        all.put("a", "1");
+        all.put("b", "\u00e9");
+        assertEquals(all, transport.getAll(HASH));
+        assertEquals(Collections.singletonMap("a", "1"), transport.get(HASH, Arrays.asList("a", "missing")));
+        assertEquals(5, transport.incrementBy(HASH, "a", 4L));
+        assertEquals(2.5, transport.incrementBy(HASH, "b", 1.5), 0);
+        assertEquals(Arrays.asList("HINCRBYFLOAT", HASH, "b", "1.5"), redis.commands().get(3));
+    }
+
+    @Test
+    void writesChangesInOnePipeline() throws IOException {
+        connect(command -> ":1\r\n", null);
+
+        transport.write(HASH, Collections.singletonMap("name", "\u00e9"), Collections.singletonList("old"));
+
+        assertEquals(Arrays.asList(
+                Arrays.asList("HSET", HASH, "name", "\u00e9"),
+                Arrays.asList("HDEL", HASH, "old")), redis.commands());
+        assertEquals(1, redis.connections.size());
+    }
+
+    @Test
+    void reconnectsAfterAnError() throws IOException {
+        final Iterator<String> replies = Arrays.asList("-ERR wrong type\r\n", "*0\r\n").iterator();
+        connect(command -> replies.next(), null);
+
+        final IOException error = assertThrows(IOException.class, () -> transport.getAll(HASH));
+        assertEquals("ERR wrong type", error.getMessage());
+
+        // The stream state is unknown after a failure, the next command uses a new connection
+        assertTrue(transport.getAll(HASH).isEmpty());
+        assertEquals(2, redis.connections.size());
+    }
+
+    @Test
+    void authenticatesEveryConnection() throws Exception {
+        connect(command -> command.get(0).equals("AUTH") ? "+OK\r\n" : ":1\r\n", "secret");
+
+        transport.subscribe("javascript:data", message -> {
+        });
+        transport.publish("javascript:data", "hello");
+        await(() -> redis.connections.size() == 2 && redis.connections.stream().allMatch(commands -> commands.size() >= 2));
+
+        for (List<List<String>> commands : redis.connections) {
+            assertEquals(Arrays.asList("AUTH", "secret"), commands.get(0));
+        }
+    }
+
+    @Test
+    void rejectedPasswordsFailTheCommand() throws IOException {
+        connect(command -> "-WRONGPASS invalid password\r\n", "wrong");
+
+        final IOException error = assertThrows(IOException.class, () -> transport.getAll(HASH));
+        assertEquals("WRONGPASS invalid password", error.getMessage());
+    }
+
+    @Test
+    void closingStopsTheSubscription() throws Exception {
+        connect(command -> ":1\r\n", null);
+        final List<String> messages = new CopyOnWriteArrayList<>();
+
+        transport.subscribe("javascript:data", messages::add);
+        await(() -> redis.subscribers.size() == 1);
+
+        redis.publish("javascript:data", "hello");
+        await(() -> messages.equals(Collections.singletonList("hello")));
+
+        transport.close();
+        // The subscription socket is closed, the blocked read does not wait for the next message
+        await(() -> redis.closed.size() == 1);
+        await(() -> Thread.getAllStackTraces().keySet().stream()
+                .noneMatch(thread -> thread.getName().equals("Javascript-Expansion redis subscriber")));
+        assertEquals(Collections.singletonList("hello"), messages);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Condition not met within " + TIMEOUT + "ms");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Accepts connections and answers every command with the reply of the test, subscriptions
+     * are confirmed and kept for {@link #publish}.
+     */
+    private static final class FakeRedis implements Closeable {
+
+        private final ServerSocket server = new ServerSocket(0);
+        private final Function<List<String>, String> replies;
+        // Commands received by each connection
+        private final List<List<List<String>>> connections = new CopyOnWriteArrayList<>();
+        private final List<OutputStream> subscribers = new CopyOnWriteArrayList<>();
+        private final List<Socket> closed = new CopyOnWriteArrayList<>();
+
+        private FakeRedis(Function<List<String>, String> replies) throws IOException {
+            this.replies = replies;
+
+            final Thread thread = new Thread(this::accept, "Fake redis");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private int getPort() {
+            return server.getLocalPort();
+        }
+
+        private List<List<String>> commands() {
+            final List<List<String>> commands = new ArrayList<>();
+            connections.forEach(commands::addAll);
+            return commands;
+        }
+
+        private void publish(String channel, String message) throws IOException {
+            for (OutputStream out : subscribers) {
+                synchronized (out) {
+                    out.write(("*3\r\n" + bulk("message") + bulk(channel) + bulk(message)).getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                }
+            }
+        }
+
+        private void accept() {
+            while (!server.isClosed()) {
+                try {
+                    final Socket socket = server.accept();
+                    final Thread thread = new Thread(() -> serve(socket), "Fake redis connection");
+                    thread.setDaemon(true);
+                    thread.start();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        private void serve(Socket socket) {
+            final List<List<String>> commands = new CopyOnWriteArrayList<>();
+            connections.add(commands);
+
+            try (Socket ignored = socket) {
+                final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                final OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+
+                List<String> command;
+                while ((command = read(in)) != null) {
+                    commands.add(command);
+
+                    synchronized (out) {
+                        if (command.get(0).equals("SUBSCRIBE")) {
+                            out.write(("*3\r\n" + bulk("subscribe") + bulk(command.get(1)) + ":1\r\n").getBytes(StandardCharsets.UTF_8));
+                            subscribers.add(out);
+                        } else {
+                            out.write(replies.apply(command).getBytes(StandardCharsets.UTF_8));
+                        }
+                        out.flush();
+                    }
+                }
+            } catch (IOException ignored) {
+            }
+            closed.add(socket);
+        }
+
+        /**
+         * @return the command, null once the client closed the connection
+         */
+        private static List<String> read(DataInputStream in) throws IOException {
+            final String header = line(in);
+
+            if (header == null) {
+                return null;
+            }
+
+            final int length = Integer.parseInt(header.substring(1));
+            final List<String> command = new ArrayList<>(length);
+
+            for (int i = 0; i < length; i++) {
+                final byte[] bytes = new byte[Integer.parseInt(line(in).substring(1))];
+                in.readFully(bytes);
+                line(in);
+                command.add(new String(bytes, StandardCharsets.UTF_8));
+            }
+            return command;
+        }
+
+        private static String line(DataInputStream in) throws IOException {
+            final StringBuilder builder = new StringBuilder();
+            int b;
+
+            while ((b = in.read()) != '\r') {
+                if (b == -1) {
+                    return null;
+                }
+                builder.append((char) b);
+            }
+            in.read();
+            return builder.toString();
+        }
+
+        private static String bulk(String value) {
+            return "$" + value.getBytes(StandardCharsets.UTF_8).length + "\r\n" + value + "\r\n";
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+        }
+    }
+}
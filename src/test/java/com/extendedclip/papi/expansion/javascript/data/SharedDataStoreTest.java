@@ -0,0 +1,154 @@
+package com.extendedclip.papi.expansion.javascript.data;
+
+import com.extendedclip.papi.expansion.javascript.ScriptData;
+import com.extendedclip.papi.expansion.javascript.TestServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Several servers sharing script data, each with a store of its own connected through the
+ * in-memory transport.
+ */
+class SharedDataStoreTest {
+
+    private static final long FLUSH_INTERVAL = 10;
+    private static final long TIMEOUT = 5000;
+
+    private final List<SharedDataStore> stores = new ArrayList<>();
+    private String identifier;
+
+    @BeforeAll
+    static void setUpServer() {
+        TestServer.install();
+    }
+
+    @BeforeEach
+    void setUp() {
+        // The in-memory store is shared by the whole JVM
+        identifier = "test_" + UUID.randomUUID();
+    }
+
+    @AfterEach
+    void tearDown() {
+        stores.forEach(SharedDataStore::stop);
+    }
+
+    private SharedDataStore start(DataTransport transport) {
+        final SharedDataStore store = new SharedDataStore(transport, FLUSH_INTERVAL);
+        store.start();
+        stores.add(store);
+        return store;
+    }
+
+    private ScriptData attach(SharedDataStore store, ScriptData data) {
+        store.attach(identifier, data);
+        store.load(identifier);
+        return data;
+    }
+
+    @Test
+    void changesReachTheOtherServers() throws InterruptedException {
+        final ScriptData one = attach(start(new LocalTransport()), new ScriptData());
+        final ScriptData two = attach(start(new LocalTransport()), new ScriptData());
+
+        one.set("name", "bob");
+        one.incr("votes", 3);
+        two.incr("votes", 4);
+        two.incrDouble("balance", 1.5);
+
+        await(() -> "bob".equals(two.get("name")));
+        await(() -> one.getLong("votes") == 7 && two.getLong("votes") == 7);
+        await(() -> one.getDouble("balance") == 1.5);
+
+        two.remove("name");
+        await(() -> !one.exists("name"));
+    }
+
+    @Test
+    void seedsAnEmptyStoreWithTheLocalEntries() throws InterruptedException {
+        final ScriptData local = new ScriptData();
+        // As read from the data file before the script was shared
+        local.getData().put("level", 5L);
+        attach(start(new LocalTransport()), local);
+
+        final ScriptData other = attach(start(new LocalTransport()), new ScriptData());
+        await(() -> Objects.equals(5L, other.get("level")));
+    }
+
+    @Test
+    void servesLocalEntriesUntilTheSharedOnesAreRead() throws InterruptedException {
+        final ScriptData one = attach(start(new LocalTransport()), new ScriptData());
+        one.set("name", "bob");
+        await(() -> stored().containsKey("name"));
+
+        final SharedDataStore store = start(new LocalTransport());
+        final ScriptData two = new ScriptData();
+        two.getData().put("name", "local");
+        two.getData().put("stale", "removed by another server");
+        store.attach(identifier, two);
+        assertEquals("local", two.get("name"));
+
+        store.load(identifier);
+        await(() -> "bob".equals(two.get("name")));
+        assertFalse(two.exists("stale"));
+    }
+
+    @Test
+    void subscribesWhileTheStoreIsUnreachable() throws InterruptedException {
+        final ScriptData offline = attach(start(new LocalTransport() {
+            @Override
+            public void connect() throws IOException {
+                throw new IOException("unreachable");
+            }
+        }), new ScriptData());
+        final ScriptData online = attach(start(new LocalTransport()), new ScriptData());
+
+        online.set("motd", "hello");
+        await(() -> "hello".equals(offline.get("motd")));
+    }
+
+    @Test
+    void readsEverythingAgainAfterTooManyChanges() throws InterruptedException {
+        final SharedDataStore first = start(new LocalTransport());
+        final ScriptData one = attach(first, new ScriptData());
+        final ScriptData two = attach(start(new LocalTransport()), new ScriptData());
+        final int keys = 12_000;
+
+        // More changes than are kept for a script which is not accessed meanwhile
+        for (int i = 0; i < keys; i++) {
+            one.set("key" + i, i);
+        }
+        // Writes and announces the remaining changes
+        first.stop();
+
+        assertEquals(keys, stored().size());
+        await(() -> Objects.equals((long) (keys - 1), two.get("key" + (keys - 1))) && two.size() == keys);
+    }
+
+    private Map<String, String> stored() {
+        return new LocalTransport().getAll("javascript:data:" + identifier);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Condition not met within " + TIMEOUT + "ms");
+            }
+            Thread.sleep(FLUSH_INTERVAL);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.extendedclip.papi.expansion.javascript.log;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A script failing on every request interleaves its errors with other messages, they are still
+ * written once per window.
+ */
+class LogPipelineTest {
+
+    private static final String PREFIX = "[test] ";
+
+    private final List<String> lines = new ArrayList<>();
+    private LogPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        final Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                synchronized (lines) {
+                    lines.add(record.getMessage());
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        pipeline = new LogPipeline(logger, PREFIX);
+    }
+
+    @Test
+    void countsRepeatsLoggedBetweenOtherMessages() {
+        pipeline.start();
+        for (int i = 0; i < 3; i++) {
+            pipeline.offer(Level.WARNING, PREFIX + "script 'a' failed", null);
+            pipeline.offer(Level.INFO, PREFIX + "tick " + i, null);
+        }
+        pipeline.stop();
+
+        assertEquals(Arrays.asList(
+                PREFIX + "script 'a' failed",
+                PREFIX + "tick 0",
+                PREFIX + "tick 1",
+                PREFIX + "tick 2",
+                PREFIX + "Repeated 2 more times within 30s: script 'a' failed"), lines);
+    }
+
+    @Test
+    void keepsRecordsWhichDifferInLevelOrError() {
+        pipeline.start();
+        pipeline.offer(Level.WARNING, "failed", null);
+        pipeline.offer(Level.SEVERE, "failed", null);
+        pipeline.offer(Level.WARNING, "failed", new IllegalStateException("closed"));
+        pipeline.offer(Level.WARNING, "failed", new IllegalStateException("closed"));
+        pipeline.stop();
+
+        assertEquals(Arrays.asList("failed", "failed", "failed", PREFIX + "Repeated 1 more time within 30s: failed"), lines);
+    }
+
+    @Test
+    void dropsRecordsOnceStopped() {
+        assertFalse(pipeline.offer(Level.INFO, "ignored", null));
+        assertTrue(lines.isEmpty());
+    }
+}